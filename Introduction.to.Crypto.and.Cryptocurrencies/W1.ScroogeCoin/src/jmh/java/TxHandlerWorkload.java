@@ -0,0 +1,78 @@
+import java.security.PublicKey;
+import java.util.List;
+
+import benchmarks.TxWorkload;
+
+/** {@link TxWorkload} on transactions generated by {@link UtxoTestSet} */
+public class TxHandlerWorkload implements TxWorkload {
+
+    private UTXOPool utxoPool;
+    private TxHandler txHandler;
+    private Transaction[] txs;
+
+    /** for each transaction, the address, message and signature of its first input */
+    private PublicKey[] addresses;
+    private byte[][] messages;
+    private byte[][] signatures;
+
+    @Override
+    public void generate(int numTxs, int maxInputs, int maxOutputs) throws Exception {
+        //UtxoTestSet needs an unspent output for every input it generates
+        final UtxoTestSet utxoTestSet = UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(Math.max(10, numTxs * maxInputs / 5))
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200 * Transaction.COIN)
+                .setTxPerTest(numTxs)
+                .setMaxInput(maxInputs)
+                .setMaxOutput(maxOutputs)
+                .setCorruptedPercentage(0)
+                .build();
+        final List<Transaction> all = utxoTestSet.getValidationLists().allElements();
+        utxoPool = utxoTestSet.getUtxoPool();
+        txHandler = new TxHandler(utxoPool);
+        txs = all.toArray(new Transaction[0]);
+
+        addresses = new PublicKey[txs.length];
+        messages = new byte[txs.length][];
+        signatures = new byte[txs.length][];
+        for (int i = 0; i < txs.length; i++) {
+            Transaction.Input in = txs[i].getInput(0);
+            Transaction.Output out = utxoPool.getTxOutput(new UTXO(in.prevTxHash, in.outputIndex));
+            addresses[i] = out != null ? out.address : null;
+            messages[i] = txs[i].getRawDataToSign(0);
+            signatures[i] = in.signature;
+        }
+    }
+
+    @Override
+    public int size() {
+        return txs.length;
+    }
+
+    @Override
+    public boolean isValidTx(int i) {
+        return txHandler.isValidTx(txs[i]);
+    }
+
+    @Override
+    public int handleTxs() {
+        return new TxHandler(utxoPool).handleTxs(txs).length;
+    }
+
+    @Override
+    public byte[] getRawTx(int i) {
+        return txs[i].getRawTx();
+    }
+
+    @Override
+    public byte[] finalizeTx(int i) {
+        txs[i].finalize();
+        return txs[i].getHash();
+    }
+
+    @Override
+    public boolean verifySignature(int i) {
+        return Crypto.verifySignature(addresses[i], messages[i], signatures[i]);
+    }
+}
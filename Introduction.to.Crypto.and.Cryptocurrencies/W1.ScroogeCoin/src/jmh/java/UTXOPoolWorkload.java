@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+
+import benchmarks.PoolWorkload;
+
+/** {@link PoolWorkload} on a pool filled by {@link UtxoTestSet} */
+public class UTXOPoolWorkload implements PoolWorkload {
+
+    private UTXOPool utxoPool;
+    private UTXO[] utxos;
+    private Transaction.Output[] outputs;
+    private UTXO[] missing;
+
+    @Override
+    public void generate(String poolClass, int size) throws Exception {
+        final UtxoTestSet utxoTestSet = UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(Math.max(1, size / 10))
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200 * Transaction.COIN)
+                .setTxPerTest(1)
+                .setMaxInput(1)
+                .setMaxOutput(1)
+                .setCorruptedPercentage(0)
+                .build();
+        final UTXOPool generated = utxoTestSet.getUtxoPool();
+        if (poolClass.equals("UTXOPool"))
+            utxoPool = generated;
+        else if (poolClass.equals("CompactUTXOPool"))
+            utxoPool = new CompactUTXOPool(generated);
+        else
+            throw new IllegalArgumentException("unknown pool class " + poolClass);
+
+        final ArrayList<UTXO> all = generated.getAllUTXO();
+        utxos = all.toArray(new UTXO[0]);
+        outputs = new Transaction.Output[utxos.length];
+        missing = new UTXO[utxos.length];
+        for (int i = 0; i < utxos.length; i++) {
+            outputs[i] = generated.getTxOutput(utxos[i]);
+            //same transaction hash, but an index no generated transaction has an output at
+            missing[i] = new UTXO(utxos[i].getTxHash(), utxos[i].getIndex() + 1000);
+        }
+    }
+
+    @Override
+    public int size() {
+        return utxos.length;
+    }
+
+    @Override
+    public boolean contains(int i) {
+        return utxoPool.contains(utxos[i]);
+    }
+
+    @Override
+    public boolean containsMissing(int i) {
+        return utxoPool.contains(missing[i]);
+    }
+
+    @Override
+    public Object getTxOutput(int i) {
+        return utxoPool.getTxOutput(utxos[i]);
+    }
+
+    @Override
+    public void removeAndAdd(int i) {
+        utxoPool.removeUTXO(utxos[i]);
+        utxoPool.addUTXO(utxos[i], outputs[i]);
+    }
+
+    @Override
+    public Object copy() {
+        return utxoPool.copy();
+    }
+}
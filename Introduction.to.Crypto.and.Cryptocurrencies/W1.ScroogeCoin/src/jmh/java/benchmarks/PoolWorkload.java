@@ -0,0 +1,26 @@
+package benchmarks;
+
+/** A filled UTXO pool and the operations benchmarked on it. Implemented by {@code UTXOPoolWorkload}. */
+public interface PoolWorkload {
+
+    /** Fills a new pool of class {@code poolClass} with about {@code size} UTXOs */
+    void generate(String poolClass, int size) throws Exception;
+
+    /** @return the number of UTXOs in the pool */
+    int size();
+
+    /** @return whether the pool contains its {@code i}-th UTXO, which it does */
+    boolean contains(int i);
+
+    /** @return whether the pool contains the {@code i}-th of as many UTXOs that it does not */
+    boolean containsMissing(int i);
+
+    /** @return the output of the {@code i}-th UTXO */
+    Object getTxOutput(int i);
+
+    /** removes the {@code i}-th UTXO and adds it back */
+    void removeAndAdd(int i);
+
+    /** @return a copy of the pool */
+    Object copy();
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the transaction validation hot path, on {@code UtxoTestSet} generated
+ * transactions with up to {@code maxInputs} inputs and {@code maxOutputs} outputs. The single
+ * transaction benchmarks cycle through the whole epoch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TxValidationBenchmark {
+
+    /** number of transactions in the epoch */
+    private static final int NUM_TXS = 100;
+
+    @Param({"1", "4", "16"})
+    public int maxInputs;
+
+    @Param({"1", "4", "16"})
+    public int maxOutputs;
+
+    private TxWorkload workload;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workloads.create(TxWorkload.class, "TxHandlerWorkload");
+        workload.generate(NUM_TXS, maxInputs, maxOutputs);
+    }
+
+    private int nextTx() {
+        int i = next;
+        next = i + 1 < workload.size() ? i + 1 : 0;
+        return i;
+    }
+
+    @Benchmark
+    public boolean isValidTx() {
+        return workload.isValidTx(nextTx());
+    }
+
+    @Benchmark
+    public int handleTxs() {
+        return workload.handleTxs();
+    }
+
+    @Benchmark
+    public byte[] getRawTx() {
+        return workload.getRawTx(nextTx());
+    }
+
+    @Benchmark
+    public byte[] finalizeTx() {
+        return workload.finalizeTx(nextTx());
+    }
+
+    @Benchmark
+    public boolean verifySignature() {
+        return workload.verifySignature(nextTx());
+    }
+}
@@ -0,0 +1,32 @@
+package benchmarks;
+
+/**
+ * The transaction validation hot path: a UTXO pool and an epoch of transactions spending from it,
+ * with the operations benchmarked on them. Implemented by {@code TxHandlerWorkload}.
+ */
+public interface TxWorkload {
+
+    /**
+     * Generates {@code numTxs} transactions, each with between 1 and {@code maxInputs} inputs and
+     * between 1 and {@code maxOutputs} outputs, and the UTXO pool they spend from
+     */
+    void generate(int numTxs, int maxInputs, int maxOutputs) throws Exception;
+
+    /** @return the number of transactions generated */
+    int size();
+
+    /** @return the result of {@code TxHandler.isValidTx} for transaction {@code i} */
+    boolean isValidTx(int i);
+
+    /** @return the number of transactions a new {@code TxHandler} accepts out of the whole epoch */
+    int handleTxs();
+
+    /** @return the raw bytes of transaction {@code i} */
+    byte[] getRawTx(int i);
+
+    /** finalizes transaction {@code i} again; @return its hash */
+    byte[] finalizeTx(int i);
+
+    /** @return the result of {@code Crypto.verifySignature} for the first input of transaction {@code i} */
+    boolean verifySignature(int i);
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the UTXO pool operations, on pools of {@code size} UTXOs of both implementations */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UTXOPoolBenchmark {
+
+    @Param({"UTXOPool", "CompactUTXOPool"})
+    public String poolClass;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private PoolWorkload workload;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workloads.create(PoolWorkload.class, "UTXOPoolWorkload");
+        workload.generate(poolClass, size);
+    }
+
+    private int nextUtxo() {
+        int i = next;
+        next = i + 1 < workload.size() ? i + 1 : 0;
+        return i;
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return workload.contains(nextUtxo());
+    }
+
+    @Benchmark
+    public boolean containsMissing() {
+        return workload.containsMissing(nextUtxo());
+    }
+
+    @Benchmark
+    public Object getTxOutput() {
+        return workload.getTxOutput(nextUtxo());
+    }
+
+    @Benchmark
+    public void removeAndAdd() {
+        workload.removeAndAdd(nextUtxo());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object copy() {
+        return workload.copy();
+    }
+}
@@ -0,0 +1,234 @@
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A {@link UTXOPool} that keeps its UTXOs in flat primitive arrays instead of a HashMap of
+ * objects. Each UTXO costs 32 bytes of transaction hash, an int index, a long value and an
+ * address reference, with no UTXO, byte[], map node or Output object behind it. The table uses
+ * open addressing with linear probing, keyed on the transaction hash bytes and the index.
+ * <p>
+ * The Output objects returned by {@link #getTxOutput(UTXO)} are created on each call, so they are
+ * equal in value but not identical to the ones that were added.
+ */
+public class CompactUTXOPool extends UTXOPool {
+
+    /** length of a SHA-256 transaction hash */
+    private static final int HASH_LENGTH = 32;
+    private static final int MIN_CAPACITY = 16;
+
+    private static final byte EMPTY = 0, FULL = 1, DELETED = 2;
+
+    /** enclosing instance of the Output objects handed out, which have no transaction of their own */
+    private static final Transaction OUTPUT_OWNER = new Transaction();
+
+    /** {@code HASH_LENGTH} bytes of transaction hash per slot */
+    private byte[] hashes;
+    private int[] indexes;
+    private long[] values;
+    private PublicKey[] addresses;
+    private byte[] states;
+    /** number of FULL slots */
+    private int size;
+    /** number of FULL and DELETED slots, which both lengthen probe sequences */
+    private int used;
+
+    /** UTXOs whose transaction hash is not {@code HASH_LENGTH} bytes long, which no finalized transaction has */
+    private final HashMap<UTXO, Transaction.Output> others = new HashMap<UTXO, Transaction.Output>();
+
+    /** Creates a new empty pool */
+    public CompactUTXOPool() {
+        this(0);
+    }
+
+    /** Creates a new empty pool with room for {@code expectedSize} UTXOs before it has to grow */
+    public CompactUTXOPool(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /** Creates a new pool that is a copy of {@code uPool} */
+    public CompactUTXOPool(UTXOPool uPool) {
+        if (uPool instanceof CompactUTXOPool) {
+            CompactUTXOPool pool = (CompactUTXOPool) uPool;
+            hashes = pool.hashes.clone();
+            indexes = pool.indexes.clone();
+            values = pool.values.clone();
+            addresses = pool.addresses.clone();
+            states = pool.states.clone();
+            size = pool.size;
+            used = pool.used;
+            others.putAll(pool.others);
+        } else {
+            ArrayList<UTXO> all = uPool.getAllUTXO();
+            allocate(capacityFor(all.size()));
+            for (UTXO ut : all)
+                addUTXO(ut, uPool.getTxOutput(ut));
+        }
+    }
+
+    @Override
+    public UTXOPool copy() {
+        return new CompactUTXOPool(this);
+    }
+
+    @Override
+    public void addUTXO(UTXO utxo, Transaction.Output txOut) {
+        byte[] hash = utxo.getTxHash();
+        if (hash.length != HASH_LENGTH) {
+            others.put(utxo, txOut);
+            return;
+        }
+        int slot = find(hash, utxo.getIndex());
+        if (slot < 0) {
+            if (used + 1 > states.length / 4 * 3) {
+                rehash();
+            }
+            slot = ~find(hash, utxo.getIndex());
+            if (states[slot] == EMPTY)
+                used++;
+            size++;
+            states[slot] = FULL;
+            System.arraycopy(hash, 0, hashes, slot * HASH_LENGTH, HASH_LENGTH);
+            indexes[slot] = utxo.getIndex();
+        }
+        values[slot] = txOut.value;
+        addresses[slot] = txOut.address;
+    }
+
+    @Override
+    public void removeUTXO(UTXO utxo) {
+        byte[] hash = utxo.getTxHash();
+        if (hash.length != HASH_LENGTH) {
+            others.remove(utxo);
+            return;
+        }
+        int slot = find(hash, utxo.getIndex());
+        if (slot >= 0) {
+            states[slot] = DELETED;
+            addresses[slot] = null;
+            size--;
+        }
+    }
+
+    @Override
+    public Transaction.Output getTxOutput(UTXO ut) {
+        byte[] hash = ut.getTxHash();
+        if (hash.length != HASH_LENGTH)
+            return others.get(ut);
+        int slot = find(hash, ut.getIndex());
+        if (slot < 0)
+            return null;
+        return OUTPUT_OWNER.new Output(values[slot], addresses[slot]);
+    }
+
+    @Override
+    public boolean contains(UTXO utxo) {
+        byte[] hash = utxo.getTxHash();
+        if (hash.length != HASH_LENGTH)
+            return others.containsKey(utxo);
+        return find(hash, utxo.getIndex()) >= 0;
+    }
+
+    @Override
+    public ArrayList<UTXO> getAllUTXO() {
+        ArrayList<UTXO> allUTXO = new ArrayList<UTXO>(size + others.size());
+        for (int slot = 0; slot < states.length; slot++) {
+            if (states[slot] == FULL) {
+                byte[] hash = Arrays.copyOfRange(hashes, slot * HASH_LENGTH, (slot + 1) * HASH_LENGTH);
+                allUTXO.add(new UTXO(hash, indexes[slot]));
+            }
+        }
+        allUTXO.addAll(others.keySet());
+        return allUTXO;
+    }
+
+    /** @return the number of UTXOs in the pool */
+    public int size() {
+        return size + others.size();
+    }
+
+    /**
+     * @return the slot holding the UTXO, or if it is not in the table the bitwise complement of
+     *         the slot it would go in: the first DELETED slot on its probe sequence, or else the
+     *         EMPTY slot that ends it
+     */
+    private int find(byte[] hash, int index) {
+        int mask = states.length - 1;
+        int slot = hash(hash, index) & mask;
+        int firstDeleted = -1;
+        while (true) {
+            byte state = states[slot];
+            if (state == EMPTY)
+                return ~(firstDeleted >= 0 ? firstDeleted : slot);
+            if (state == DELETED) {
+                if (firstDeleted < 0)
+                    firstDeleted = slot;
+            } else if (indexes[slot] == index && sameHash(slot, hash)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean sameHash(int slot, byte[] hash) {
+        int offset = slot * HASH_LENGTH;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            if (hashes[offset + i] != hash[i])
+                return false;
+        }
+        return true;
+    }
+
+    /** transaction hashes are uniformly distributed already, so mixing their first bytes with the index is enough */
+    private static int hash(byte[] hash, int index) {
+        int h = (hash[0] & 0xff) << 24 | (hash[1] & 0xff) << 16 | (hash[2] & 0xff) << 8 | (hash[3] & 0xff);
+        h ^= index * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    /** grows the table if it is at least half full, otherwise just clears it of DELETED slots */
+    private void rehash() {
+        byte[] oldHashes = hashes;
+        int[] oldIndexes = indexes;
+        long[] oldValues = values;
+        PublicKey[] oldAddresses = addresses;
+        byte[] oldStates = states;
+        allocate(capacityFor(size + 1));
+        byte[] hash = new byte[HASH_LENGTH];
+        for (int slot = 0; slot < oldStates.length; slot++) {
+            if (oldStates[slot] != FULL)
+                continue;
+            System.arraycopy(oldHashes, slot * HASH_LENGTH, hash, 0, HASH_LENGTH);
+            int newSlot = ~find(hash, oldIndexes[slot]);
+            states[newSlot] = FULL;
+            System.arraycopy(hash, 0, hashes, newSlot * HASH_LENGTH, HASH_LENGTH);
+            indexes[newSlot] = oldIndexes[slot];
+            values[newSlot] = oldValues[slot];
+            addresses[newSlot] = oldAddresses[slot];
+            size++;
+            used++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        hashes = new byte[capacity * HASH_LENGTH];
+        indexes = new int[capacity];
+        values = new long[capacity];
+        addresses = new PublicKey[capacity];
+        states = new byte[capacity];
+        size = 0;
+        used = 0;
+    }
+
+    /** @return a power of two that keeps {@code expectedSize} UTXOs at most half full */
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2)
+            capacity <<= 1;
+        return capacity;
+    }
+}
@@ -30,7 +30,7 @@ public class Main {
          * to the TXHandler.
          */
         Tx tx = new Tx();
-        tx.addOutput(10, pk_scrooge.getPublic());
+        tx.addOutput(10 * Transaction.COIN, pk_scrooge.getPublic());
 
         // This value has no meaning, but tx.getRawDataToSign(0) will access it in prevTxHash;
         byte[] initialHash = BigInteger.valueOf(0).toByteArray();
@@ -56,12 +56,11 @@ public class Main {
 
         // I split the coin of value 10 into 3 coins and send all of them for simplicity to
         // the same address (Alice)
-        tx2.addOutput(5, pk_alice.getPublic());
-        tx2.addOutput(3, pk_alice.getPublic());
-        tx2.addOutput(2, pk_alice.getPublic());
-        // Note that in the real world fixed-point types would be used for the values, not doubles.
-        // Doubles exhibit floating-point rounding errors. This type should be for example BigInteger
-        // and denote the smallest coin fractions (Satoshi in Bitcoin).
+        tx2.addOutput(5 * Transaction.COIN, pk_alice.getPublic());
+        tx2.addOutput(3 * Transaction.COIN, pk_alice.getPublic());
+        tx2.addOutput(2 * Transaction.COIN, pk_alice.getPublic());
+        // Values are longs counting the smallest coin fractions (Satoshi in Bitcoin), Transaction.COIN
+        // of them to a coin, so unlike doubles they add up without rounding errors.
 
         // There is only one (at position 0) Transaction.Input in tx2
         // and it contains the coin from Scrooge, therefore I have to sign with the private key from Scrooge
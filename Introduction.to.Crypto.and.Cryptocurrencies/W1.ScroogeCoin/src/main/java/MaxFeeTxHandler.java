@@ -1,5 +1,405 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A {@link TxHandler} alternative that, instead of accepting transactions greedily in array order,
+ * picks the mutually valid subset of an epoch with the highest total fee, a transaction's fee being
+ * the sum of its input values minus the sum of its output values.
+ * <p>
+ * The dependency and conflict graph of the epoch is built once. Epochs with at most
+ * {@code exactLimit} candidate transactions are then solved exactly by branch and bound; larger
+ * ones greedily, by repeatedly accepting the transaction with the highest ancestor package fee
+ * rate (its own fee and size plus those of its not yet accepted ancestors in the epoch).
+ */
 public class MaxFeeTxHandler {
-    public void handleTxs() {
 
+    /** default number of candidate transactions up to which an epoch is solved exactly */
+    public static final int EXACT_LIMIT = 20;
+
+    private static final int UNDECIDED = 0, SELECTED = 1, EXCLUDED = 2;
+
+    private UTXOPool pool;
+    private final int exactLimit;
+
+    /**
+     * Creates a public ledger whose current UTXOPool is a copy of {@code utxoPool}, solving epochs
+     * of up to {@link #EXACT_LIMIT} candidate transactions exactly
+     */
+    public MaxFeeTxHandler(UTXOPool utxoPool) {
+        this(utxoPool, EXACT_LIMIT);
+    }
+
+    /**
+     * Creates a public ledger whose current UTXOPool is a copy of {@code utxoPool}, solving epochs
+     * of up to {@code exactLimit} candidate transactions exactly (at most 30)
+     */
+    public MaxFeeTxHandler(UTXOPool utxoPool, int exactLimit) {
+        if (exactLimit > 30)
+            throw new IllegalArgumentException("exactLimit must be at most 30");
+        pool = utxoPool.copy();
+        this.exactLimit = exactLimit;
+    }
+
+    /**
+     * Handles each epoch by receiving an unordered array of proposed transactions, returning the
+     * mutually valid array of accepted transactions with the highest total fee, and updating the
+     * current UTXO pool as appropriate. The returned transactions are ordered so that every one
+     * comes after the transactions whose outputs it claims.
+     */
+    public Transaction[] handleTxs(Transaction[] possibleTxs) {
+        Candidates candidates = new Candidates(new TransactionGraph(possibleTxs));
+        boolean[] selected = candidates.size() <= exactLimit ?
+                new ExactSearch(candidates).run() : selectByPackageFeeRate(candidates);
+
+        ArrayList<Transaction> txs = new ArrayList<Transaction>();
+        for (int k = 0; k < candidates.size(); k++) {
+            if (!selected[k])
+                continue;
+            Transaction tx = candidates.tx[k];
+            for (Transaction.Input input : tx.getInputs())
+                pool.removeUTXO(new UTXO(input.prevTxHash, input.outputIndex));
+            for (int i = 0; i < tx.numOutputs(); i++)
+                pool.addUTXO(new UTXO(tx.getHash(), i), tx.getOutput(i));
+            txs.add(tx);
+        }
+        return txs.toArray(new Transaction[0]);
+    }
+
+    /** @return the current UTXO pool */
+    public UTXOPool getUTXOPool() {
+        return pool;
+    }
+
+    /** @return the total fee of {@code txs}, whose claimed outputs must be in {@code utxoPool} or in {@code txs} */
+    public static long totalFee(Transaction[] txs, UTXOPool utxoPool) {
+        UTXOPool available = new UTXOPool(utxoPool);
+        for (Transaction tx : txs) {
+            for (int i = 0; i < tx.numOutputs(); i++)
+                available.addUTXO(new UTXO(tx.getHash(), i), tx.getOutput(i));
+        }
+        long fee = 0;
+        for (Transaction tx : txs) {
+            for (Transaction.Input input : tx.getInputs())
+                fee += available.getTxOutput(new UTXO(input.prevTxHash, input.outputIndex)).value;
+            for (Transaction.Output output : tx.getOutputs())
+                fee -= output.value;
+        }
+        return fee;
+    }
+
+    /** @return {@code a + b}, or -1 if either is negative or the sum overflows */
+    private static long addAmounts(long a, long b) {
+        if (a < 0 || b < 0 || b > Long.MAX_VALUE - a)
+            return -1;
+        return a + b;
+    }
+
+    /**
+     * The transactions of an epoch that are valid on their own, provided that the epoch
+     * transactions they depend on are accepted too. Candidates are numbered in topological order,
+     * so any set of them can be applied in ascending order.
+     */
+    private class Candidates {
+
+        Transaction[] tx;
+        long[] fee;
+        int[] size;
+        /** candidates whose outputs candidate k claims */
+        int[][] parents;
+        /** candidates claiming outputs of candidate k */
+        int[][] children;
+        /** other candidates claiming an output that candidate k claims too */
+        int[][] conflicts;
+
+        Candidates(TransactionGraph graph) {
+            int[] order = graph.getTopologicalOrder();
+            int[] candidateOf = new int[graph.size()];
+            Arrays.fill(candidateOf, -1);
+            List<Transaction> txList = new ArrayList<Transaction>();
+            List<Long> feeList = new ArrayList<Long>();
+            List<int[]> parentList = new ArrayList<int[]>();
+            HashMap<UTXO, List<Integer>> claimers = new HashMap<UTXO, List<Integer>>();
+
+            for (int t : order) {
+                Transaction candidate = graph.getTransaction(t);
+                ArrayList<Transaction.Input> inputs = candidate.getInputs();
+                HashSet<UTXO> claimed = new HashSet<UTXO>();
+                List<Integer> dependsOn = new ArrayList<Integer>();
+                long inputValue = 0, outputValue = 0;
+                boolean valid = true;
+                for (int i = 0; i < inputs.size() && valid; i++) {
+                    Transaction.Input input = inputs.get(i);
+                    if (input.prevTxHash == null || input.outputIndex < 0 || input.signature == null) {
+                        valid = false;
+                        break;
+                    }
+                    UTXO u = new UTXO(input.prevTxHash, input.outputIndex);
+                    Transaction.Output output = pool.getTxOutput(u);
+                    if (output == null) {
+                        //not in the pool, so it has to come from a candidate earlier in the epoch
+                        int p = graph.indexOf(input.prevTxHash);
+                        if (p < 0 || candidateOf[p] < 0) {
+                            valid = false;
+                            break;
+                        }
+                        output = graph.getTransaction(p).getOutput(input.outputIndex);
+                        if (!dependsOn.contains(candidateOf[p]))
+                            dependsOn.add(candidateOf[p]);
+                    }
+                    valid = output != null && claimed.add(u)
+                            && SignatureVerifier.verifyInput(candidate, i, output.address);
+                    if (valid)
+                        inputValue = addAmounts(inputValue, output.value);
+                }
+                for (Transaction.Output output : candidate.getOutputs()) {
+                    valid &= output.value >= 0;
+                    outputValue = addAmounts(outputValue, output.value);
+                }
+                //a sum that overflowed is marked negative, and no valid transaction has one
+                valid &= inputValue >= 0 && outputValue >= 0;
+                if (!valid || inputValue < outputValue)
+                    continue;
+
+                int k = txList.size();
+                candidateOf[t] = k;
+                txList.add(candidate);
+                feeList.add(inputValue - outputValue);
+                parentList.add(toArray(dependsOn));
+                for (UTXO u : claimed) {
+                    if (!claimers.containsKey(u))
+                        claimers.put(u, new ArrayList<Integer>());
+                    claimers.get(u).add(k);
+                }
+            }
+
+            int m = txList.size();
+            tx = txList.toArray(new Transaction[m]);
+            fee = new long[m];
+            size = new int[m];
+            parents = parentList.toArray(new int[m][]);
+            List<List<Integer>> childLists = new ArrayList<List<Integer>>();
+            List<List<Integer>> conflictLists = new ArrayList<List<Integer>>();
+            for (int k = 0; k < m; k++) {
+                fee[k] = feeList.get(k);
+                size[k] = Math.max(1, tx[k].getRawTxSize());
+                childLists.add(new ArrayList<Integer>());
+                conflictLists.add(new ArrayList<Integer>());
+            }
+            for (int k = 0; k < m; k++) {
+                for (int p : parents[k])
+                    childLists.get(p).add(k);
+            }
+            for (List<Integer> sameOutput : claimers.values()) {
+                for (int a : sameOutput) {
+                    for (int b : sameOutput) {
+                        if (a != b && !conflictLists.get(a).contains(b))
+                            conflictLists.get(a).add(b);
+                    }
+                }
+            }
+            children = new int[m][];
+            conflicts = new int[m][];
+            for (int k = 0; k < m; k++) {
+                children[k] = toArray(childLists.get(k));
+                conflicts[k] = toArray(conflictLists.get(k));
+            }
+        }
+
+        int size() {
+            return tx.length;
+        }
+    }
+
+    /** Branch and bound over all subsets of candidates, with the candidate sets kept as bit masks */
+    private static class ExactSearch {
+
+        private final Candidates c;
+        private final int[] parentMask, conflictMask;
+        /** sum of the fees of candidates k and above, the most the remaining choices can add */
+        private final long[] remainingFee;
+        private long bestFee = -1;
+        private int bestMask;
+
+        ExactSearch(Candidates c) {
+            this.c = c;
+            int m = c.size();
+            parentMask = new int[m];
+            conflictMask = new int[m];
+            remainingFee = new long[m + 1];
+            for (int k = m - 1; k >= 0; k--) {
+                for (int p : c.parents[k])
+                    parentMask[k] |= 1 << p;
+                for (int o : c.conflicts[k])
+                    conflictMask[k] |= 1 << o;
+                remainingFee[k] = remainingFee[k + 1] + c.fee[k];
+            }
+        }
+
+        boolean[] run() {
+            search(0, 0, 0);
+            boolean[] selected = new boolean[c.size()];
+            for (int k = 0; k < selected.length; k++)
+                selected[k] = (bestMask & (1 << k)) != 0;
+            return selected;
+        }
+
+        private void search(int k, int mask, long fee) {
+            if (fee + remainingFee[k] <= bestFee)
+                return;
+            if (k == c.size()) {
+                bestFee = fee;
+                bestMask = mask;
+                return;
+            }
+            //a candidate can be taken if all its epoch parents are and nothing it conflicts with is
+            if ((mask & conflictMask[k]) == 0 && (parentMask[k] & ~mask) == 0)
+                search(k + 1, mask | (1 << k), fee + c.fee[k]);
+            search(k + 1, mask, fee);
+        }
+    }
+
+    /** a candidate's ancestor package as it was when queued; stale once the candidate's version changes */
+    private static class QueuedPackage implements Comparable<QueuedPackage> {
+        final int candidate;
+        final int version;
+        final double feeRate;
+
+        QueuedPackage(int candidate, int version, double feeRate) {
+            this.candidate = candidate;
+            this.version = version;
+            this.feeRate = feeRate;
+        }
+
+        public int compareTo(QueuedPackage other) {
+            int byRate = Double.compare(other.feeRate, feeRate);
+            return byRate != 0 ? byRate : Integer.compare(candidate, other.candidate);
+        }
+    }
+
+    private boolean[] selectByPackageFeeRate(Candidates c) {
+        int m = c.size();
+        int[] state = new int[m];
+        int[] version = new int[m];
+        int[] stamp = new int[m];
+        int[] currentStamp = {0};
+        PriorityQueue<QueuedPackage> queue = new PriorityQueue<QueuedPackage>();
+        for (int k = 0; k < m; k++)
+            enqueue(c, k, state, version, stamp, currentStamp, queue);
+
+        while (!queue.isEmpty()) {
+            QueuedPackage top = queue.poll();
+            int k = top.candidate;
+            if (state[k] != UNDECIDED || top.version != version[k])
+                continue;
+            List<Integer> pkg = ancestorPackage(c, k, state, stamp, currentStamp);
+            if (pkg == null)
+                continue;
+            for (int member : pkg)
+                state[member] = SELECTED;
+            for (int member : pkg) {
+                for (int other : c.conflicts[member])
+                    exclude(c, other, state);
+            }
+            //descendants now have fewer ancestors left to accept, so their package fee rate changed
+            int mark = ++currentStamp[0];
+            List<Integer> descendants = new ArrayList<Integer>();
+            for (int member : pkg)
+                descendants.add(member);
+            for (int i = 0; i < descendants.size(); i++) {
+                for (int child : c.children[descendants.get(i)]) {
+                    if (state[child] == UNDECIDED && stamp[child] != mark) {
+                        stamp[child] = mark;
+                        descendants.add(child);
+                    }
+                }
+            }
+            for (int d : descendants) {
+                if (state[d] == UNDECIDED) {
+                    version[d]++;
+                    enqueue(c, d, state, version, stamp, currentStamp, queue);
+                }
+            }
+        }
+
+        boolean[] selected = new boolean[m];
+        for (int k = 0; k < m; k++)
+            selected[k] = state[k] == SELECTED;
+        return selected;
+    }
+
+    private void enqueue(Candidates c, int k, int[] state, int[] version, int[] stamp, int[] currentStamp,
+                         PriorityQueue<QueuedPackage> queue) {
+        List<Integer> pkg = ancestorPackage(c, k, state, stamp, currentStamp);
+        if (pkg == null)
+            return;
+        long fee = 0;
+        long size = 0;
+        for (int member : pkg) {
+            fee += c.fee[member];
+            size += c.size[member];
+        }
+        queue.add(new QueuedPackage(k, version[k], (double) fee / size));
+    }
+
+    /**
+     * @return candidate {@code k} and its undecided ancestors in ascending (topological) order, or
+     *         null if the package cannot be accepted because an ancestor is excluded or two of its
+     *         members conflict
+     */
+    private List<Integer> ancestorPackage(Candidates c, int k, int[] state, int[] stamp, int[] currentStamp) {
+        int mark = ++currentStamp[0];
+        List<Integer> pkg = new ArrayList<Integer>();
+        List<Integer> stack = new ArrayList<Integer>();
+        stack.add(k);
+        stamp[k] = mark;
+        while (!stack.isEmpty()) {
+            int member = stack.remove(stack.size() - 1);
+            if (state[member] == EXCLUDED)
+                return null;
+            pkg.add(member);
+            for (int p : c.parents[member]) {
+                if (state[p] == UNDECIDED && stamp[p] != mark) {
+                    stamp[p] = mark;
+                    stack.add(p);
+                }
+            }
+        }
+        for (int member : pkg) {
+            for (int other : c.conflicts[member]) {
+                if (stamp[other] == mark)
+                    return null;
+            }
+        }
+        Collections.sort(pkg);
+        return pkg;
+    }
+
+    /** excludes candidate {@code k} and, since they can no longer be valid, all its descendants */
+    private static void exclude(Candidates c, int k, int[] state) {
+        if (state[k] != UNDECIDED)
+            return;
+        state[k] = EXCLUDED;
+        List<Integer> excluded = new ArrayList<Integer>();
+        excluded.add(k);
+        for (int i = 0; i < excluded.size(); i++) {
+            for (int child : c.children[excluded.get(i)]) {
+                if (state[child] == UNDECIDED) {
+                    state[child] = EXCLUDED;
+                    excluded.add(child);
+                }
+            }
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
     }
 }
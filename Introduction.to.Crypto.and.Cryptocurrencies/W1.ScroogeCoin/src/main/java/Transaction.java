@@ -1,4 +1,5 @@
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.security.MessageDigest;
@@ -31,23 +32,66 @@ public class Transaction {
                 signature = null;
             else
                 signature = Arrays.copyOf(sig, sig.length);
+            hash = null;
         }
     }
 
     public class Output {
-        /** value in bitcoins of the output */
-        public double value;
+        /** value of the output, in base units: {@link Transaction#COIN} of them make one coin */
+        public long value;
         /** the address or public key of the recipient */
         public PublicKey address;
+        /** serialized form of {@code address}, computed once since every input signs it again */
+        private EncodedAddress encodedAddress;
 
-        public Output(double v, PublicKey addr) {
+        public Output(long v, PublicKey addr) {
             value = v;
             address = addr;
         }
+
+        /** @return the serialized form of {@code address}; callers must not modify it */
+        byte[] getAddressBytes() {
+            EncodedAddress encoded = encodedAddress;
+            if (encoded == null || encoded.address != address) {
+                encoded = new EncodedAddress(address, address.getEncoded());
+                encodedAddress = encoded;
+            }
+            return encoded.bytes;
+        }
     }
 
-    /** hash of the transaction, its unique id */
-    private byte[] hash;
+    /** an address together with its serialized form, so the pair can be cached without locking */
+    private static final class EncodedAddress {
+        final PublicKey address;
+        final byte[] bytes;
+
+        EncodedAddress(PublicKey address, byte[] bytes) {
+            this.address = address;
+            this.bytes = bytes;
+        }
+    }
+
+    /** number of base units in one coin; amounts are whole numbers of base units, so sums of them are exact */
+    public static final long COIN = 100000000L;
+
+    /** computing a hash only needs a digest of its own, so each thread keeps one to reuse */
+    private static final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException x) {
+                throw new IllegalStateException("SHA-256 is not available", x);
+            }
+        }
+    };
+
+    /**
+     * hash of the transaction, its unique id; computed when first asked for and dropped by every
+     * change made through the methods of the transaction or of its inputs, so it is never stale.
+     * Volatile, as transactions are hashed from several threads at once.
+     */
+    private volatile byte[] hash;
     private ArrayList<Input> inputs;
     private ArrayList<Output> outputs;
 
@@ -57,23 +101,33 @@ public class Transaction {
     }
 
     public Transaction(Transaction tx) {
-        hash = tx.hash.clone();
-        inputs = new ArrayList<Input>(tx.inputs);
+        byte[] h = tx.hash;
+        hash = h != null ? h.clone() : null;
+        //the inputs are copied, so that signing one only drops the hash of the transaction it belongs to
+        inputs = new ArrayList<Input>(tx.inputs.size());
+        for (Input in : tx.inputs) {
+            Input copy = new Input(in.prevTxHash, in.outputIndex);
+            copy.signature = in.signature;
+            inputs.add(copy);
+        }
         outputs = new ArrayList<Output>(tx.outputs);
     }
 
     public void addInput(byte[] prevTxHash, int outputIndex) {
         Input in = new Input(prevTxHash, outputIndex);
         inputs.add(in);
+        hash = null;
     }
 
-    public void addOutput(double value, PublicKey address) {
+    public void addOutput(long value, PublicKey address) {
         Output op = new Output(value, address);
         outputs.add(op);
+        hash = null;
     }
 
     public void removeInput(int index) {
         inputs.remove(index);
+        hash = null;
     }
 
     public void removeInput(UTXO ut) {
@@ -82,6 +136,7 @@ public class Transaction {
             UTXO u = new UTXO(in.prevTxHash, in.outputIndex);
             if (u.equals(ut)) {
                 inputs.remove(i);
+                hash = null;
                 return;
             }
         }
@@ -89,39 +144,42 @@ public class Transaction {
 
     //YCM: raw data = inputs.get(index).prevTxHash +
     //YCM:            inputs.get(index).outputIndex +
-    //YCM:            (for each op in outputs) op.value + op.address.getEncoded()
+    //YCM:            (for each op in outputs) op.value (as a varint) + op.address.getEncoded()
     //YCM: that is, for each input at index i, he need to sign his data plus all the output data
     public byte[] getRawDataToSign(int index) {
         // ith input and all outputs
-        ArrayList<Byte> sigData = new ArrayList<Byte>();
         if (index > inputs.size())
             return null;
+        byte[] sigD = new byte[getRawDataToSignSize(index)];
+        getRawDataToSign(index, ByteBuffer.wrap(sigD));
+        return sigD;
+    }
+
+    /** @return the length of the array {@link #getRawDataToSign(int)} returns for input {@code index} */
+    public int getRawDataToSignSize(int index) {
+        byte[] prevTxHash = inputs.get(index).prevTxHash;
+        int size = (prevTxHash != null ? prevTxHash.length : 0) + Integer.SIZE / 8;
+        for (Output op : outputs)
+            size += varLongSize(op.value) + op.getAddressBytes().length;
+        return size;
+    }
+
+    /**
+     * Writes the data to sign for input {@code index} into {@code dst} at its current position,
+     * without allocating. {@code dst} must have {@link #getRawDataToSignSize(int)} bytes remaining.
+     */
+    public void getRawDataToSign(int index, ByteBuffer dst) {
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.BIG_ENDIAN);
         Input in = inputs.get(index);
-        byte[] prevTxHash = in.prevTxHash;
-        ByteBuffer b = ByteBuffer.allocate(Integer.SIZE / 8);
-        b.putInt(in.outputIndex);
-        byte[] outputIndex = b.array();
-        if (prevTxHash != null)
-            for (int i = 0; i < prevTxHash.length; i++)
-                sigData.add(prevTxHash[i]);
-        for (int i = 0; i < outputIndex.length; i++)
-            sigData.add(outputIndex[i]);
+        if (in.prevTxHash != null)
+            dst.put(in.prevTxHash);
+        dst.putInt(in.outputIndex);
         for (Output op : outputs) {
-            ByteBuffer bo = ByteBuffer.allocate(Double.SIZE / 8);
-            bo.putDouble(op.value);
-            byte[] value = bo.array();
-            byte[] addressBytes = op.address.getEncoded();
-            for (int i = 0; i < value.length; i++)
-                sigData.add(value[i]);
-
-            for (int i = 0; i < addressBytes.length; i++)
-                sigData.add(addressBytes[i]);
-        }
-        byte[] sigD = new byte[sigData.size()];
-        int i = 0;
-        for (Byte sb : sigData)
-            sigD[i++] = sb;
-        return sigD;
+            putVarLong(dst, op.value);
+            dst.put(op.getAddressBytes());
+        }
+        dst.order(order);
     }
 
     public void addSignature(byte[] signature, int index) {
@@ -129,58 +187,116 @@ public class Transaction {
     }
 
     public byte[] getRawTx() {
-        ArrayList<Byte> rawTx = new ArrayList<Byte>();
+        byte[] tx = new byte[getRawTxSize()];
+        getRawTx(ByteBuffer.wrap(tx));
+        return tx;
+    }
+
+    /** @return the length of the array {@link #getRawTx()} returns */
+    public int getRawTxSize() {
+        int size = 0;
         for (Input in : inputs) {
-            byte[] prevTxHash = in.prevTxHash;
-            ByteBuffer b = ByteBuffer.allocate(Integer.SIZE / 8);
-            b.putInt(in.outputIndex);
-            byte[] outputIndex = b.array();
-            byte[] signature = in.signature;
-            if (prevTxHash != null)
-                for (int i = 0; i < prevTxHash.length; i++)
-                    rawTx.add(prevTxHash[i]);
-            for (int i = 0; i < outputIndex.length; i++)
-                rawTx.add(outputIndex[i]);
-            if (signature != null)
-                for (int i = 0; i < signature.length; i++)
-                    rawTx.add(signature[i]);
+            if (in.prevTxHash != null)
+                size += in.prevTxHash.length;
+            size += Integer.SIZE / 8;
+            if (in.signature != null)
+                size += in.signature.length;
         }
-        for (Output op : outputs) {
-            ByteBuffer b = ByteBuffer.allocate(Double.SIZE / 8);
-            b.putDouble(op.value);
-            byte[] value = b.array();
-            byte[] addressBytes = op.address.getEncoded();
-            for (int i = 0; i < value.length; i++) {
-                rawTx.add(value[i]);
-            }
-            for (int i = 0; i < addressBytes.length; i++) {
-                rawTx.add(addressBytes[i]);
-            }
+        for (Output op : outputs)
+            size += varLongSize(op.value) + op.getAddressBytes().length;
+        return size;
+    }
 
+    /**
+     * Writes the raw transaction into {@code dst} at its current position, without allocating.
+     * {@code dst} must have {@link #getRawTxSize()} bytes remaining.
+     */
+    public void getRawTx(ByteBuffer dst) {
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.BIG_ENDIAN);
+        for (Input in : inputs) {
+            if (in.prevTxHash != null)
+                dst.put(in.prevTxHash);
+            dst.putInt(in.outputIndex);
+            if (in.signature != null)
+                dst.put(in.signature);
         }
-        byte[] tx = new byte[rawTx.size()];
-        int i = 0;
-        for (Byte b : rawTx)
-            tx[i++] = b;
-        return tx;
+        for (Output op : outputs) {
+            putVarLong(dst, op.value);
+            dst.put(op.getAddressBytes());
+        }
+        dst.order(order);
     }
 
+    /** Computes the hash now; {@link #getHash()} does so by itself when the hash is not known */
     public void finalize() {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(getRawTx());
-            hash = md.digest();
-        } catch (NoSuchAlgorithmException x) {
-            x.printStackTrace(System.err);
-        }
+        hash = computeHash();
     }
 
+    /** Sets the hash, which is kept until the transaction is next changed */
     public void setHash(byte[] h) {
         hash = h;
     }
 
+    /**
+     * @return the hash of the transaction, computed if it changed since it was last hashed. Changes
+     *         made by writing to the fields of its inputs and outputs, or to the lists
+     *         {@link #getInputs()} and {@link #getOutputs()} return, are not noticed.
+     */
     public byte[] getHash() {
-        return hash;
+        byte[] h = hash;
+        if (h == null) {
+            h = computeHash();
+            hash = h;
+        }
+        return h;
+    }
+
+    private byte[] computeHash() {
+        MessageDigest md = digests.get();
+        md.update(getRawTx());
+        return md.digest();
+    }
+
+    /**
+     * @return the number of bytes {@link #putVarLong(ByteBuffer, long)} writes for {@code value}
+     */
+    public static int varLongSize(long value) {
+        long v = (value << 1) ^ (value >> 63);
+        int size = 1;
+        while ((v >>>= 7) != 0)
+            size++;
+        return size;
+    }
+
+    /**
+     * Writes {@code value} into {@code dst} as a variable-length integer: zigzag encoded, so small
+     * negative values stay short too, then seven bits per byte, least significant first, with the
+     * high bit set on every byte but the last. Amounts below 2^20 base units take three bytes or
+     * less instead of eight.
+     */
+    public static void putVarLong(ByteBuffer dst, long value) {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            dst.put((byte) (v & 0x7F | 0x80));
+            v >>>= 7;
+        }
+        dst.put((byte) v);
+    }
+
+    /**
+     * @return the value {@link #putVarLong(ByteBuffer, long)} wrote at the position of {@code src}
+     * @throws IllegalArgumentException if the encoding is longer than a long allows
+     */
+    public static long getVarLong(ByteBuffer src) {
+        long v = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = src.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return (v >>> 1) ^ -(v & 1);
+        }
+        throw new IllegalArgumentException("variable-length integer longer than " + Long.SIZE + " bits");
     }
 
     public ArrayList<Input> getInputs() {
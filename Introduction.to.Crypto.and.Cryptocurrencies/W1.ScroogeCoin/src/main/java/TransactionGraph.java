@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The dependency graph of an epoch of transactions: transaction i is a parent of transaction j if
+ * j claims an output of i. Transactions are referred to by their index in the array the graph is
+ * built from.
+ */
+public class TransactionGraph {
+
+    private final Transaction[] txs;
+    private final HashMap<ByteArrayWrapper, Integer> indexByHash;
+    private final int[][] parents;
+    private final int[][] children;
+    private final int[] topologicalOrder;
+
+    /** Builds the graph of {@code txs} in time linear in their total number of inputs */
+    public TransactionGraph(Transaction[] txs) {
+        this.txs = txs;
+        int n = txs.length;
+
+        indexByHash = new HashMap<ByteArrayWrapper, Integer>();
+        for (int i = 0; i < n; i++) {
+            byte[] hash = txs[i].getHash();
+            if (hash != null && !indexByHash.containsKey(new ByteArrayWrapper(hash)))
+                indexByHash.put(new ByteArrayWrapper(hash), i);
+        }
+
+        List<List<Integer>> childLists = new ArrayList<List<Integer>>(n);
+        for (int i = 0; i < n; i++)
+            childLists.add(new ArrayList<Integer>());
+        parents = new int[n][];
+        for (int j = 0; j < n; j++) {
+            List<Integer> parentList = new ArrayList<Integer>();
+            for (Transaction.Input input : txs[j].getInputs()) {
+                int i = indexOf(input.prevTxHash);
+                //a tx claiming several outputs of the same parent depends on it only once
+                if (i >= 0 && i != j && !parentList.contains(i)) {
+                    parentList.add(i);
+                    childLists.get(i).add(j);
+                }
+            }
+            parents[j] = toArray(parentList);
+        }
+        children = new int[n][];
+        for (int i = 0; i < n; i++)
+            children[i] = toArray(childLists.get(i));
+
+        topologicalOrder = sortTopologically();
+    }
+
+    /** @return the number of transactions in the graph */
+    public int size() {
+        return txs.length;
+    }
+
+    /** @return the transaction at index {@code i} */
+    public Transaction getTransaction(int i) {
+        return txs[i];
+    }
+
+    /** @return the index of the transaction with hash {@code hash}, or -1 if it is not in the graph */
+    public int indexOf(byte[] hash) {
+        if (hash == null)
+            return -1;
+        Integer i = indexByHash.get(new ByteArrayWrapper(hash));
+        return i == null ? -1 : i;
+    }
+
+    /** @return the indexes of the transactions whose outputs transaction {@code i} claims */
+    public int[] getParents(int i) {
+        return parents[i];
+    }
+
+    /** @return the indexes of the transactions claiming outputs of transaction {@code i} */
+    public int[] getChildren(int i) {
+        return children[i];
+    }
+
+    /**
+     * @return the indexes of all transactions, every one after all of its parents. Transactions
+     *         without parents in the epoch come first, in their original array order.
+     */
+    public int[] getTopologicalOrder() {
+        return topologicalOrder;
+    }
+
+    //Kahn's algorithm, using the output array itself as the queue of transactions whose parents are done
+    private int[] sortTopologically() {
+        int n = txs.length;
+        int[] pendingParents = new int[n];
+        int[] order = new int[n];
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            pendingParents[i] = parents[i].length;
+            if (pendingParents[i] == 0)
+                order[tail++] = i;
+        }
+        for (int head = 0; head < tail; head++) {
+            for (int j : children[order[head]]) {
+                if (--pendingParents[j] == 0)
+                    order[tail++] = j;
+            }
+        }
+        //only a hash collision could create a cycle; such transactions can never be valid anyway
+        return tail == n ? order : Arrays.copyOf(order, tail);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+}
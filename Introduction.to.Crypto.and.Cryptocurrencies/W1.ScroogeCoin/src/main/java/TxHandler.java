@@ -1,3 +1,4 @@
+import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -8,6 +9,9 @@ public class TxHandler {
 
     private UTXOPool pool;
 
+    /** checks the signatures of each epoch in parallel, null to check them one by one */
+    private SignatureVerifier verifier;
+
     /**
      * Creates a public ledger whose current UTXOPool (collection of unspent transaction outputs) is
      * {@code utxoPool}. This should make a copy of utxoPool by using the UTXOPool(UTXOPool uPool)
@@ -15,7 +19,17 @@ public class TxHandler {
      */
     public TxHandler(UTXOPool utxoPool) {
         // IMPLEMENT THIS
-        pool = new UTXOPool(utxoPool);
+        //copy() keeps the copy as compact as the original if utxoPool is a CompactUTXOPool
+        pool = utxoPool.copy();
+    }
+
+    /**
+     * Same as {@link #TxHandler(UTXOPool)}, except that {@link #handleTxs(Transaction[])} checks
+     * the signatures of the whole epoch up front on the worker threads of {@code verifier}.
+     */
+    public TxHandler(UTXOPool utxoPool, SignatureVerifier verifier) {
+        this(utxoPool);
+        this.verifier = verifier;
     }
 
     public void printTx(Transaction tx) {
@@ -43,6 +57,14 @@ public class TxHandler {
      */
     public boolean isValidTx(Transaction tx) {
         // IMPLEMENT THIS
+        return isValidTx(tx, null);
+    }
+
+    /**
+     * same as {@link #isValidTx(Transaction)}, but skips (2) for input i if {@code verifiedAddresses[i]}
+     * is the address of the output it claims, which its signature was already found valid under
+     */
+    private boolean isValidTx(Transaction tx, PublicKey[] verifiedAddresses) {
 
         //System.out.println("isValidTx()...");
         //printTx(tx);
@@ -50,7 +72,8 @@ public class TxHandler {
         ArrayList<Transaction.Input> inputs = tx.getInputs();
         ArrayList<Transaction.Output> outputs = tx.getOutputs();
 
-        double totalInputValue = 0.0, totalOutputValue = 0.0;
+        //amounts are whole base units, so the sums are exact; one that overflows is invalid
+        long totalInputValue = 0, totalOutputValue = 0;
 
         for (int i=0; i<inputs.size(); i++) {
 
@@ -76,11 +99,15 @@ public class TxHandler {
 
                 //(2)
                 //i assume we use data from getRawDataToSign() to sign
-                byte[] msgToSign = tx.getRawDataToSign(i);
-                boolean verifyResult = Crypto.verifySignature(output.address, msgToSign, input.signature);
-                if (!verifyResult) {
-                    //System.out.println("sign verify false, invalid!");
-                    return false;
+                //handleTxs may already have verified all signatures of this tx in parallel, but only
+                //against the output it resolved then; another output with the same hash may be here
+                if (!SignatureVerifier.isVerified(verifiedAddresses, i, output.address)) {
+                    byte[] msgToSign = tx.getRawDataToSign(i);
+                    boolean verifyResult = Crypto.verifySignature(output.address, msgToSign, input.signature);
+                    if (!verifyResult) {
+                        //System.out.println("sign verify false, invalid!");
+                        return false;
+                    }
                 }
 
                 //(3)
@@ -95,7 +122,11 @@ public class TxHandler {
                 }
 
                 //(5)
-                totalInputValue += output.value;
+                try {
+                    totalInputValue = Math.addExact(totalInputValue, output.value);
+                } catch (ArithmeticException e) {
+                    return false;
+                }
             }
         }
 
@@ -107,7 +138,11 @@ public class TxHandler {
                 return false;
             }
             //(5)
-            totalOutputValue += output.value;
+            try {
+                totalOutputValue = Math.addExact(totalOutputValue, output.value);
+            } catch (ArithmeticException e) {
+                return false;
+            }
         }
         if (totalInputValue<totalOutputValue) {
             //System.out.println("total input smaller than output, invalid!");
@@ -126,12 +161,17 @@ public class TxHandler {
     public Transaction[] handleTxs(Transaction[] possibleTxs) {
         // IMPLEMENT THIS
 
+        //the expensive signature checks of the whole epoch run up front, in parallel if we can;
+        //a tx whose signatures could not be confirmed there is fully re-checked by isValidTx below
+        PublicKey[][] verifiedAddresses = verifier != null ?
+                verifier.verify(possibleTxs, pool) : new PublicKey[possibleTxs.length][];
+
         ArrayList<Transaction> txs = new ArrayList<Transaction>();
         for (int txIndex=0;txIndex<possibleTxs.length;txIndex++) {
             Transaction tx = possibleTxs[txIndex];
 
             //if the tx is not valid, bypass it
-            boolean validFlag = isValidTx(tx);
+            boolean validFlag = isValidTx(tx, verifiedAddresses[txIndex]);
             //System.out.println("valid flag is "+validFlag);
             if (!validFlag) continue;
 
@@ -158,4 +198,19 @@ public class TxHandler {
         return Arrays.copyOf(txs.toArray(), txs.size(), Transaction[].class);
     }
 
+    /**
+     * Same as {@link #handleTxs(Transaction[])}, except that {@code possibleTxs} are first put in
+     * dependency order: every transaction comes after the transactions of the epoch whose outputs
+     * it claims. Transactions spending outputs of transactions later in the array are then
+     * accepted in the same single pass. Ordering takes time linear in the number of inputs, and
+     * the accepted transactions are returned in the order they were applied.
+     */
+    public Transaction[] handleTxsInDependencyOrder(Transaction[] possibleTxs) {
+        int[] order = new TransactionGraph(possibleTxs).getTopologicalOrder();
+        Transaction[] orderedTxs = new Transaction[order.length];
+        for (int i = 0; i < order.length; i++)
+            orderedTxs[i] = possibleTxs[order[i]];
+        return handleTxs(orderedTxs);
+    }
+
 }
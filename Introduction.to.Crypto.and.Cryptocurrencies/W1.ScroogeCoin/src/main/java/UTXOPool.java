@@ -18,6 +18,16 @@ public class UTXOPool {
     /** Creates a new UTXOPool that is a copy of {@code uPool} */
     public UTXOPool(UTXOPool uPool) {
         H = new HashMap<UTXO, Transaction.Output>(uPool.H);
+        //subclasses such as CompactUTXOPool keep their UTXOs somewhere else
+        if (uPool.getClass() != UTXOPool.class) {
+            for (UTXO ut : uPool.getAllUTXO())
+                H.put(ut, uPool.getTxOutput(ut));
+        }
+    }
+
+    /** @return a copy of this pool, of the same kind as this pool */
+    public UTXOPool copy() {
+        return new UTXOPool(this);
     }
 
     /** Adds a mapping from UTXO {@code utxo} to transaction output @code{txOut} to the pool */
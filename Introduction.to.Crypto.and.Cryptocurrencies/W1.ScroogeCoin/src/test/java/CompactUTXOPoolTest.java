@@ -0,0 +1,95 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CompactUTXOPool}
+ * <p>
+ * Test Strategy:
+ * Test 1: a random sequence of adds and removes leaves it with the same contents as a UTXOPool
+ * Test 2: copies, in both directions, are independent and complete
+ */
+public class CompactUTXOPoolTest {
+
+    private static void assertSameContents(UTXOPool expected, UTXOPool actual) {
+        ArrayList<UTXO> all = expected.getAllUTXO();
+        assertEquals(new HashSet<UTXO>(all), new HashSet<UTXO>(actual.getAllUTXO()));
+        for (UTXO ut : all) {
+            assertTrue(actual.contains(ut));
+            assertEquals(expected.getTxOutput(ut).value, actual.getTxOutput(ut).value);
+            assertEquals(expected.getTxOutput(ut).address, actual.getTxOutput(ut).address);
+        }
+    }
+
+    private static List<UTXO> randomUtxos(Random random, int number) {
+        List<UTXO> utxos = new ArrayList<UTXO>();
+        for (int i = 0; i < number; i++) {
+            byte[] hash = new byte[i % 50 == 0 ? 1 : 32];
+            random.nextBytes(hash);
+            utxos.add(new UTXO(hash, random.nextInt(4)));
+        }
+        return utxos;
+    }
+
+    // Test 1: a random sequence of adds and removes leaves it with the same contents as a UTXOPool
+    @Test
+    public void testMatchesUTXOPool() throws NoSuchAlgorithmException {
+        final Random random = new Random(42);
+        final PublicKey address = KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic();
+        final Transaction tx = new Transaction();
+        final List<UTXO> utxos = randomUtxos(random, 2000);
+
+        final UTXOPool expected = new UTXOPool();
+        final CompactUTXOPool actual = new CompactUTXOPool();
+        for (int op = 0; op < 20000; op++) {
+            UTXO ut = utxos.get(random.nextInt(utxos.size()));
+            if (random.nextInt(3) == 0) {
+                expected.removeUTXO(ut);
+                actual.removeUTXO(ut);
+            } else {
+                Transaction.Output out = tx.new Output(random.nextInt(100), address);
+                expected.addUTXO(ut, out);
+                actual.addUTXO(ut, out);
+            }
+            assertEquals(expected.contains(ut), actual.contains(ut));
+        }
+        assertEquals(expected.getAllUTXO().size(), actual.size());
+        assertSameContents(expected, actual);
+        for (UTXO ut : utxos) {
+            if (!expected.contains(ut))
+                assertNull(actual.getTxOutput(ut));
+        }
+    }
+
+    // Test 2: copies, in both directions, are independent and complete
+    @Test
+    public void testCopies() throws NoSuchAlgorithmException {
+        final Random random = new Random(7);
+        final PublicKey address = KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic();
+        final Transaction tx = new Transaction();
+        final UTXOPool compact = new CompactUTXOPool();
+        for (UTXO ut : randomUtxos(random, 100))
+            compact.addUTXO(ut, tx.new Output(1, address));
+
+        final UTXOPool plainCopy = new UTXOPool(compact);
+        final UTXOPool compactCopy = compact.copy();
+        assertTrue(compactCopy instanceof CompactUTXOPool);
+        assertSameContents(compact, plainCopy);
+        assertSameContents(compact, compactCopy);
+        assertSameContents(plainCopy, new CompactUTXOPool(plainCopy));
+
+        final UTXO first = compact.getAllUTXO().get(0);
+        compactCopy.removeUTXO(first);
+        assertTrue(compact.contains(first));
+    }
+}
@@ -0,0 +1,124 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TxHandler#handleTxs(Transaction[])}
+ * <p>
+ * Test Strategy:
+ * Test 1: handleTxs() with a parallel signature verifier accepts exactly what the sequential one accepts
+ * Test 2: handleTxsInDependencyOrder() accepts a chain listed children first in a single call
+ * Test 3: a signature verified up front against another transaction with the same hash is checked again
+ */
+public class HandleTxsTest {
+
+    private static UtxoTestSet createTestSet(double corruptedPercentage)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(10)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200 * Transaction.COIN)
+                .setTxPerTest(10)
+                .setMaxInput(10)
+                .setMaxOutput(10)
+                .setForceCorruptedSignature(true)
+                .setInvalidPrivateKeys(true)
+                .setCorruptedPercentage(corruptedPercentage)
+                .build();
+    }
+
+    // Test 1: handleTxs() with a parallel signature verifier accepts exactly what the sequential one accepts
+    @Test
+    public void testParallelVerificationMatchesSequential()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        final UtxoTestSet utxoTestSet = createTestSet(.20);
+        final List<Transaction> all = utxoTestSet.getValidationLists().allElements();
+        final Transaction[] possibleTxs = all.toArray(new Transaction[0]);
+
+        final Transaction[] sequential = new TxHandler(utxoTestSet.getUtxoPool()).handleTxs(possibleTxs);
+
+        final SignatureVerifier verifier = new SignatureVerifier(4);
+        try {
+            final Transaction[] parallel = new TxHandler(utxoTestSet.getUtxoPool(), verifier).handleTxs(possibleTxs);
+            assertArrayEquals(sequential, parallel);
+        } finally {
+            verifier.shutdown();
+        }
+    }
+
+    // Test 2: handleTxsInDependencyOrder() accepts a chain listed children first in a single call
+    @Test
+    public void testDependencyOrderAcceptsChainListedBackwards() throws NoSuchAlgorithmException, SignatureException {
+        final KeyPair scrooge = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final Main.Tx root = new Main.Tx();
+        root.addOutput(10, scrooge.getPublic());
+        root.addInput(BigInteger.valueOf(0).toByteArray(), 0);
+        root.signTx(scrooge.getPrivate(), 0);
+        final UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(root.getHash(), 0), root.getOutput(0));
+
+        final Transaction[] chain = new Transaction[4];
+        Transaction prev = root;
+        for (int i = 0; i < chain.length; i++) {
+            final Main.Tx tx = new Main.Tx();
+            tx.addInput(prev.getHash(), 0);
+            tx.addOutput(9 - i, scrooge.getPublic());
+            tx.signTx(scrooge.getPrivate(), 0);
+            chain[i] = prev = tx;
+        }
+        final Transaction[] backwards = {chain[3], chain[2], chain[1], chain[0]};
+
+        assertEquals(1, new TxHandler(utxoPool).handleTxs(backwards).length);
+        assertArrayEquals(chain, new TxHandler(utxoPool).handleTxsInDependencyOrder(backwards));
+    }
+
+    // Test 3: a signature verified up front against another transaction with the same hash is checked again
+    @Test
+    public void testParallelVerificationDoesNotTrustAnotherOutput() throws NoSuchAlgorithmException, SignatureException {
+        final KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final KeyPair mallory = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final Main.Tx root = new Main.Tx();
+        root.addOutput(10, alice.getPublic());
+        root.addInput(BigInteger.valueOf(0).toByteArray(), 0);
+        root.signTx(alice.getPrivate(), 0);
+        final UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(root.getHash(), 0), root.getOutput(0));
+
+        // two transactions claim the same hash; the pool will hold the first, the second double spends
+        final byte[] forgedHash = new byte[32];
+        final Main.Tx first = new Main.Tx();
+        first.addInput(root.getHash(), 0);
+        first.addOutput(10, alice.getPublic());
+        first.signTx(alice.getPrivate(), 0);
+        first.setHash(forgedHash);
+        final Main.Tx second = new Main.Tx();
+        second.addInput(root.getHash(), 0);
+        second.addOutput(10, mallory.getPublic());
+        second.signTx(alice.getPrivate(), 0);
+        second.setHash(forgedHash);
+        // valid under mallory's output of the second, but the output it really spends is alice's
+        final Main.Tx theft = new Main.Tx();
+        theft.addInput(forgedHash, 0);
+        theft.addOutput(10, mallory.getPublic());
+        theft.signTx(mallory.getPrivate(), 0);
+        final Transaction[] possibleTxs = {first, second, theft};
+
+        assertArrayEquals(new Transaction[]{first}, new TxHandler(utxoPool).handleTxs(possibleTxs));
+        final SignatureVerifier verifier = new SignatureVerifier(2);
+        try {
+            assertArrayEquals(new Transaction[]{first}, new TxHandler(utxoPool, verifier).handleTxs(possibleTxs));
+        } finally {
+            verifier.shutdown();
+        }
+    }
+}
@@ -50,7 +50,7 @@ public class IsValidTest {
                 .setPeopleSize(10)
                 .setUtxoTxNumber(10)
                 .setMaxUtxoTxOutput(10)
-                .setMaxValue(200)
+                .setMaxValue(200 * Transaction.COIN)
                 .setTxPerTest(10)
                 .setMaxInput(10)
                 .setMaxOutput(10)
@@ -70,7 +70,7 @@ public class IsValidTest {
                 .setPeopleSize(10)
                 .setUtxoTxNumber(10)
                 .setMaxUtxoTxOutput(10)
-                .setMaxValue(200)
+                .setMaxValue(200 * Transaction.COIN)
                 .setTxPerTest(10)
                 .setMaxInput(10)
                 .setMaxOutput(10)
@@ -91,7 +91,7 @@ public class IsValidTest {
                 .setPeopleSize(10)
                 .setUtxoTxNumber(10)
                 .setMaxUtxoTxOutput(10)
-                .setMaxValue(200)
+                .setMaxValue(200 * Transaction.COIN)
                 .setTxPerTest(10)
                 .setMaxInput(10)
                 .setMaxOutput(10)
@@ -112,7 +112,7 @@ public class IsValidTest {
                 .setPeopleSize(10)
                 .setUtxoTxNumber(10)
                 .setMaxUtxoTxOutput(10)
-                .setMaxValue(200)
+                .setMaxValue(200 * Transaction.COIN)
                 .setTxPerTest(10)
                 .setMaxInput(10)
                 .setMaxOutput(10)
@@ -134,7 +134,7 @@ public class IsValidTest {
                 .setPeopleSize(10)
                 .setUtxoTxNumber(10)
                 .setMaxUtxoTxOutput(10)
-                .setMaxValue(200)
+                .setMaxValue(200 * Transaction.COIN)
                 .setTxPerTest(10)
                 .setMaxInput(10)
                 .setMaxOutput(10)
@@ -155,7 +155,7 @@ public class IsValidTest {
                 .setPeopleSize(10)
                 .setUtxoTxNumber(10)
                 .setMaxUtxoTxOutput(10)
-                .setMaxValue(200)
+                .setMaxValue(200 * Transaction.COIN)
                 .setTxPerTest(10)    //TODO: original 10
                 .setMaxInput(10)
                 .setMaxOutput(10)
@@ -176,7 +176,7 @@ public class IsValidTest {
                 .setPeopleSize(10)
                 .setUtxoTxNumber(10)
                 .setMaxUtxoTxOutput(10)
-                .setMaxValue(200)
+                .setMaxValue(200 * Transaction.COIN)
                 .setTxPerTest(10)
                 .setMaxInput(10)
                 .setMaxOutput(10)
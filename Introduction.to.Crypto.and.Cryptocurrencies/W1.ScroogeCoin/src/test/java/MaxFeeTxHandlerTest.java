@@ -0,0 +1,123 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MaxFeeTxHandler#handleTxs(Transaction[])}
+ * <p>
+ * Test Strategy:
+ * Test 1: prefers one high fee transaction over a conflicting lower fee chain, exactly and heuristically
+ * Test 2: accepts a child listed before its parent
+ * Test 3: on random test sets, accepts a mutually valid set with at least the fee of TxHandler's
+ * Test 4: rejects a transaction whose output total overflows, exactly and heuristically
+ */
+public class MaxFeeTxHandlerTest {
+
+    private KeyPair scrooge;
+    private UTXOPool utxoPool;
+    private Transaction root;
+
+    @Before
+    public void setUp() throws NoSuchAlgorithmException, SignatureException {
+        scrooge = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Main.Tx tx = new Main.Tx();
+        tx.addOutput(10, scrooge.getPublic());
+        tx.addOutput(10, scrooge.getPublic());
+        tx.addInput(BigInteger.valueOf(0).toByteArray(), 0);
+        tx.signTx(scrooge.getPrivate(), 0);
+        root = tx;
+        utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(root.getHash(), 0), root.getOutput(0));
+        utxoPool.addUTXO(new UTXO(root.getHash(), 1), root.getOutput(1));
+    }
+
+    private Transaction spend(Transaction prev, int index, long value) throws SignatureException {
+        Main.Tx tx = new Main.Tx();
+        tx.addInput(prev.getHash(), index);
+        tx.addOutput(value, scrooge.getPublic());
+        tx.signTx(scrooge.getPrivate(), 0);
+        return tx;
+    }
+
+    // Test 1: prefers one high fee transaction over a conflicting lower fee chain, exactly and heuristically
+    @Test
+    public void testPrefersHigherFeeOverConflictingChain() throws SignatureException {
+        Transaction a = spend(root, 0, 9);  // fee 1
+        Transaction b = spend(root, 0, 5);  // fee 5, conflicts with a
+        Transaction c = spend(a, 0, 8);     // fee 1, needs a
+        Transaction[] possibleTxs = {a, b, c};
+
+        assertEquals(2, new TxHandler(utxoPool).handleTxs(possibleTxs).length);
+        assertArrayEquals(new Transaction[]{b}, new MaxFeeTxHandler(utxoPool).handleTxs(possibleTxs));
+        assertArrayEquals(new Transaction[]{b}, new MaxFeeTxHandler(utxoPool, 0).handleTxs(possibleTxs));
+    }
+
+    // Test 2: accepts a child listed before its parent
+    @Test
+    public void testAcceptsChildBeforeParent() throws SignatureException {
+        Transaction parent = spend(root, 1, 9);
+        Transaction child = spend(parent, 0, 7);
+        Transaction[] possibleTxs = {child, parent};
+
+        MaxFeeTxHandler handler = new MaxFeeTxHandler(utxoPool, 0);
+        assertArrayEquals(new Transaction[]{parent, child}, handler.handleTxs(possibleTxs));
+        assertTrue(handler.getUTXOPool().contains(new UTXO(child.getHash(), 0)));
+        assertTrue(!handler.getUTXOPool().contains(new UTXO(root.getHash(), 1)));
+    }
+
+    // Test 3: on random test sets, accepts a mutually valid set with at least the fee of TxHandler's
+    @Test
+    public void testRandomSetsAreValidAndNotWorseThanTxHandler()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        final UtxoTestSet utxoTestSet = UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(10)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200 * Transaction.COIN)
+                .setTxPerTest(10)
+                .setMaxInput(10)
+                .setMaxOutput(10)
+                .setInvalidTotals(true)
+                .setCorruptedPercentage(.20)
+                .build();
+        final List<Transaction> all = utxoTestSet.getValidationLists().allElements();
+        final Transaction[] possibleTxs = all.toArray(new Transaction[0]);
+
+        final Transaction[] greedy = new TxHandler(utxoTestSet.getUtxoPool()).handleTxs(possibleTxs);
+        for (int exactLimit : new int[]{0, MaxFeeTxHandler.EXACT_LIMIT}) {
+            final Transaction[] maxFee = new MaxFeeTxHandler(utxoTestSet.getUtxoPool(), exactLimit).handleTxs(possibleTxs);
+            // applied in the returned order, every accepted transaction is valid
+            assertEquals(maxFee.length, new TxHandler(utxoTestSet.getUtxoPool()).handleTxs(maxFee).length);
+            assertTrue(MaxFeeTxHandler.totalFee(maxFee, utxoTestSet.getUtxoPool())
+                    >= MaxFeeTxHandler.totalFee(greedy, utxoTestSet.getUtxoPool()));
+        }
+    }
+
+    // Test 4: rejects a transaction whose output total overflows, exactly and heuristically
+    @Test
+    public void testRejectsOverflowingOutputs() throws SignatureException {
+        Main.Tx tx = new Main.Tx();
+        tx.addInput(root.getHash(), 0);
+        // the two outputs add up to -2 in wrapping arithmetic, less than the 10 claimed
+        tx.addOutput(Long.MAX_VALUE, scrooge.getPublic());
+        tx.addOutput(Long.MAX_VALUE, scrooge.getPublic());
+        tx.signTx(scrooge.getPrivate(), 0);
+        Transaction[] possibleTxs = {tx};
+
+        assertFalse(new TxHandler(utxoPool).isValidTx(tx));
+        assertEquals(0, new MaxFeeTxHandler(utxoPool).handleTxs(possibleTxs).length);
+        assertEquals(0, new MaxFeeTxHandler(utxoPool, 0).handleTxs(possibleTxs).length);
+    }
+}
@@ -31,7 +31,7 @@ import java.util.concurrent.ThreadLocalRandom;
  * 	.setPeopleSize(10)
  * 	.setUtxoTxNumber(10)
  * 	.setMaxUtxoTxOutput(10)
- * 	.setMaxValue(200)
+ * 	.setMaxValue(200 * Transaction.COIN)
  * 	.setTxPerTest(10)
  * 	.setMaxInput(10)
  * 	.setMaxOutput(10)
@@ -78,7 +78,7 @@ public class UtxoTestSet {
         private int peopleSize;
         private int utxoTxNumber;
         private int maxUtxoTxOutput;
-        private double maxValue;
+        private long maxValue;
         private int txNumberPerTest;
         private int maxInputs;
         private int maxOutputs;
@@ -122,11 +122,11 @@ public class UtxoTestSet {
         }
 
         /**
-         * Max coin value per transaction, can be exceed in invalid transactions
+         * Max value per output, in base units, can be exceed in invalid transactions
          * @param maxValue
          * @return this builder
          */
-        public UtxoTestSetBuilder setMaxValue(final double maxValue) {
+        public UtxoTestSetBuilder setMaxValue(final long maxValue) {
             this.maxValue = maxValue;
             return this;
         }
@@ -270,7 +270,7 @@ public class UtxoTestSet {
     private final boolean isClaimingOutputsNotInPool;
     private final boolean isForceCorruptedSignature;
     private final boolean isClaimingUtxoSeveralTimes;
-    private final double maxValue;
+    private final long maxValue;
     private final ValidationLists<Transaction> validationLists;
     private final ThreadLocalRandom random;
     private final boolean isForceNegativeOutputs;
@@ -296,7 +296,7 @@ public class UtxoTestSet {
      * @throws InvalidKeyException
      * @throws SignatureException
      */
-    private UtxoTestSet(int peopleSize, int utxoTxNumber, int maxUtxoTxOutput, double maxValue, int txNumberPerTest,
+    private UtxoTestSet(int peopleSize, int utxoTxNumber, int maxUtxoTxOutput, long maxValue, int txNumberPerTest,
                         int maxInputs, int maxOutputs, double corruptedPercentage, boolean isForceInvalidPrivateKeys,
                         boolean isForceInvalidTotals, boolean isClaimingOutputsNotInPool, boolean isForceCorruptedSignature,
                         boolean isClaimingUtxoSeveralTimes, boolean isForceNegativeOutputs)
@@ -325,7 +325,7 @@ public class UtxoTestSet {
 
     }
 
-    private UTXOPool createUtxoPool(List<KeyPair> people, int utxoTxNumber, int maxUtxoTxOutput, double maxValue,
+    private UTXOPool createUtxoPool(List<KeyPair> people, int utxoTxNumber, int maxUtxoTxOutput, long maxValue,
                                     Map<UTXO, KeyPair> utxoToKeyPair) {
         final UTXOPool utxoPool = new UTXOPool();
         Map<Integer, KeyPair> keyPairAtIndex = new HashMap<>();
@@ -339,13 +339,13 @@ public class UtxoTestSet {
         return utxoPool;
     }
 
-    private Transaction createTxWithOutputs(List<KeyPair> people, double maxValue, Map<Integer, KeyPair> keyPairAtIndex, int num) {
+    private Transaction createTxWithOutputs(List<KeyPair> people, long maxValue, Map<Integer, KeyPair> keyPairAtIndex, int num) {
         final Transaction tx = new Transaction();
         for (int j = 0; j < num; j++) {
             // pick a random public address
             int rIndex = random.nextInt(people.size());
             PublicKey addr = people.get(rIndex).getPublic();
-            double value = random.nextDouble(maxValue);
+            long value = random.nextLong(maxValue);
             tx.addOutput(value, addr);
             keyPairAtIndex.put(j, people.get(rIndex));
         }
@@ -417,7 +417,7 @@ public class UtxoTestSet {
             final int nOutputs = random.nextInt(maxOutputs) + 1;
 
             // create inputs
-            double inputValue = 0;
+            long inputValue = 0;
             for (int j = 0; j < nInputs; j++) {
                 UTXO utxo = null;
                 if (isClaimingOutputsNotInPool && isRandomSelection()) {
@@ -451,16 +451,17 @@ public class UtxoTestSet {
             }
 
             // create outpus
-            double outputValue = 0;
+            long outputValue = 0;
             for (int j = 0; j < nOutputs; j++) {
-                double value;
+                long value;
                 if ((isForceInvalidTotals && isRandomSelection())
                         || outputValue > inputValue) {
-                    value = random.nextDouble(maxValue);
+                    value = random.nextLong(maxValue);
                 } else {
-                    value = random.nextDouble(inputValue - outputValue);
+                    value = outputValue < inputValue ? random.nextLong(inputValue - outputValue) : 0;
                     if (isForceNegativeOutputs && isRandomSelection()) {
-                        value = -value;
+                        //-1 - value rather than -value, so that a value of 0 still becomes negative
+                        value = -1 - value;
                         corrupted = true;
                     }
                 }
@@ -0,0 +1,62 @@
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The candidates of a round seen as a set, one per sender and transaction it sent, created only
+ * as the set is walked, so a node that ignores the candidates it receives costs nothing.
+ */
+class CandidateView extends AbstractSet<Candidate> {
+
+    private final List<TransactionSet> proposals;
+    private final int[] senders;
+
+    /** {@code proposals.get(k)} holds the transactions sent by {@code senders[k]} */
+    CandidateView(List<TransactionSet> proposals, int[] senders) {
+        this.proposals = proposals;
+        this.senders = senders;
+    }
+
+    @Override
+    public Iterator<Candidate> iterator() {
+        return new Iterator<Candidate>() {
+            private int k = -1;
+            private Iterator<Transaction> txs;
+
+            @Override
+            public boolean hasNext() {
+                while (txs == null || !txs.hasNext()) {
+                    if (++k >= proposals.size())
+                        return false;
+                    txs = proposals.get(k).iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public Candidate next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return new Candidate(txs.next(), senders[k]);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (TransactionSet proposal : proposals)
+            size += proposal.size();
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (TransactionSet proposal : proposals) {
+            if (!proposal.isEmpty())
+                return false;
+        }
+        return true;
+    }
+}
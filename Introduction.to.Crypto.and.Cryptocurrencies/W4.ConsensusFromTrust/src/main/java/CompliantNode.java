@@ -14,12 +14,16 @@ public class CompliantNode implements Node {
     int numRounds;
 
     boolean[] followees;
+    int[] followeeIds;
 
-    Set<Candidate> candidates;
     Set<Transaction> txProposedByCandidates;
 
     Set<Transaction> myProposalOfTransactions;
 
+    //the tx added to myProposalOfTransactions since the last sendDeltaToFollowers;
+    //null until it is first called, so a node that always sends everything records nothing
+    Set<Transaction> txLearnedSinceLastSend;
+
 
     public CompliantNode(double p_graph, double p_malicious, double p_txDistribution, int numRounds) {
         // IMPLEMENT THIS
@@ -37,13 +41,25 @@ public class CompliantNode implements Node {
         this.followees = followees;
     }
 
+    //called instead of setFollowees(boolean[]) by large simulations
+    //followeeIds lists the nodes i follow, which takes far less memory than a flag per node
+    @Override
+    public void setFollowees(int[] followeeIds, int numNodes) {
+        this.followeeIds = followeeIds;
+    }
+
     //called order in Sim: (2)
     //this is to set the initial starting state that this node has
     public void setPendingTransaction(Set<Transaction> pendingTransactions) {
         // IMPLEMENT THIS
         //the initial set is always trusted becuase in assignment it reads
         //"Assume that all transactions are valid and that invalid transactions cannot be created."
-        this.myProposalOfTransactions = new HashSet<Transaction>(pendingTransactions);
+        //a bitset over the simulation's transactions is kept as one, so merging proposals is an OR
+        if (pendingTransactions instanceof TransactionSet)
+            this.myProposalOfTransactions = new TransactionSet((TransactionSet) pendingTransactions);
+        else
+            this.myProposalOfTransactions = new HashSet<Transaction>(pendingTransactions);
+        this.txLearnedSinceLastSend = null;
     }
 
     //called order in Sim: (3)
@@ -54,20 +70,65 @@ public class CompliantNode implements Node {
         return myProposalOfTransactions;
     }
 
+    //called instead of sendToFollowers in delta mode: only what we learned since last time,
+    //as our followers already merged everything we sent before
+    @Override
+    public Set<Transaction> sendDeltaToFollowers() {
+        Set<Transaction> delta = txLearnedSinceLastSend;
+        if (delta == null) {
+            //nothing has been sent yet, so the first delta is the whole set
+            delta = newTransactionSet();
+            delta.addAll(myProposalOfTransactions);
+        }
+        txLearnedSinceLastSend = newTransactionSet();
+        return delta;
+    }
+
     //this is a total set of tx that broadcast from nodes that i trust/follow
     public void receiveFromFollowees(Set<Candidate> candidates) {
         // IMPLEMENT THIS
 
-        //everytime we get the new candidates set,
-        this.candidates = candidates;
-
-        //we update candidatesGraph
+        //everytime we get the new candidates set, we update candidatesGraph
+        //(the set is a view over proposals the simulation refills next round, so we must not keep it)
         Set<Transaction> txProposed = new HashSet<Transaction>();
         for (Candidate c : candidates) {
             Transaction tx = c.tx;
             txProposed.add(tx);
         }
+        merge(txProposed);
+    }
+
+    //same as receiveFromFollowees, but the proposals are merged as whole sets
+    //(word-wise ORs when they share our dictionary) instead of tx by tx
+    @Override
+    public void receiveProposals(List<TransactionSet> proposals, int[] senders) {
+        Set<Transaction> txProposed = newTransactionSet();
+        for (TransactionSet proposal : proposals)
+            txProposed.addAll(proposal);
+        if (txProposed.isEmpty())
+            return;
+        merge(txProposed);
+    }
+
+    //adds txProposed to our proposal, remembering the tx that are new to us for the next delta
+    //if we send deltas
+    private void merge(Set<Transaction> txProposed) {
         this.txProposedByCandidates = txProposed;
-        this.myProposalOfTransactions.addAll(txProposed);
+        if (txLearnedSinceLastSend == null) {
+            this.myProposalOfTransactions.addAll(txProposed);
+            return;
+        }
+        Set<Transaction> learned = newTransactionSet();
+        learned.addAll(txProposed);
+        learned.removeAll(myProposalOfTransactions);
+        this.myProposalOfTransactions.addAll(learned);
+        this.txLearnedSinceLastSend.addAll(learned);
+    }
+
+    //an empty set of the same kind as myProposalOfTransactions
+    private Set<Transaction> newTransactionSet() {
+        if (myProposalOfTransactions instanceof TransactionSet)
+            return new TransactionSet(((TransactionSet) myProposalOfTransactions).getDictionary());
+        return new HashSet<Transaction>();
     }
 }
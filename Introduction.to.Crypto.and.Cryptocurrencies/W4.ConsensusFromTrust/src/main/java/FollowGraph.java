@@ -0,0 +1,158 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A follow graph in compressed sparse row form: the nodes each node follows, its followees, and
+ * the nodes following it, its followers, are stored as consecutive runs of one int array each, so
+ * the graph takes memory proportional to its number of edges rather than to the square of its
+ * number of nodes.
+ */
+public class FollowGraph {
+
+    /** most edges a graph can have, as they are held in one int array and counted by int offsets */
+    public static final int MAX_EDGES = Integer.MAX_VALUE - 8;
+
+    private final int numNodes;
+
+    /** followees of node i are followees[followeeStart[i]] to followees[followeeStart[i + 1] - 1], in increasing order */
+    private final int[] followeeStart;
+    private final int[] followees;
+
+    /** followers of node i are followers[followerStart[i]] to followers[followerStart[i + 1] - 1], in increasing order */
+    private final int[] followerStart;
+    private final int[] followers;
+
+    private FollowGraph(int numNodes, int[] followeeStart, int[] followees) {
+        this.numNodes = numNodes;
+        this.followeeStart = followeeStart;
+        this.followees = followees;
+
+        //followers are the transposed graph, built with a counting sort on the followee
+        followerStart = new int[numNodes + 1];
+        for (int followee : followees)
+            followerStart[followee + 1]++;
+        for (int i = 0; i < numNodes; i++)
+            followerStart[i + 1] += followerStart[i];
+        followers = new int[followees.length];
+        int[] next = Arrays.copyOf(followerStart, numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            for (int k = followeeStart[i]; k < followeeStart[i + 1]; k++)
+                followers[next[followees[k]]++] = i;
+        }
+    }
+
+    /**
+     * @return a random graph of {@code numNodes} nodes in which each node follows each other node
+     *         with probability {@code p_graph}. The gaps between the followees of a node are drawn
+     *         from a geometric distribution, so building it takes time proportional to its number
+     *         of edges.
+     * @throws IllegalArgumentException if the graph would have more than {@link #MAX_EDGES} edges,
+     *         which is checked against the expected number of edges before any is drawn
+     */
+    public static FollowGraph random(int numNodes, double p_graph, Random random) {
+        double expectedEdges = (double) numNodes * (numNodes - 1) * Math.min(Math.max(p_graph, 0), 1);
+        if (expectedEdges > MAX_EDGES)
+            throw tooManyEdges(numNodes, (long) expectedEdges);
+        int[] followeeStart = new int[numNodes + 1];
+        int[] followees = new int[16];
+        int numEdges = 0;
+        double logOfMiss = Math.log(1 - p_graph);
+        for (int i = 0; i < numNodes; i++) {
+            followeeStart[i] = numEdges;
+            //j runs over the other nodes, skipping node i itself
+            for (long j = nextGap(random, p_graph, logOfMiss); j < numNodes - 1; j += 1 + nextGap(random, p_graph, logOfMiss)) {
+                if (numEdges == followees.length) {
+                    //the draw can still come out above the expected number, if that is close to the limit
+                    if (numEdges == MAX_EDGES)
+                        throw tooManyEdges(numNodes, (long) numEdges + 1);
+                    followees = Arrays.copyOf(followees, (int) Math.min(followees.length * 2L, MAX_EDGES));
+                }
+                followees[numEdges++] = j < i ? (int) j : (int) j + 1;
+            }
+        }
+        followeeStart[numNodes] = numEdges;
+        return new FollowGraph(numNodes, followeeStart, Arrays.copyOf(followees, numEdges));
+    }
+
+    /**
+     * @return a graph with the edges of {@code followees}, where {@code followees[i][j]} is true if i follows j
+     * @throws IllegalArgumentException if it has more than {@link #MAX_EDGES} edges
+     */
+    public static FollowGraph fromMatrix(boolean[][] followees) {
+        int numNodes = followees.length;
+        int[] followeeStart = new int[numNodes + 1];
+        long numEdges = 0;
+        for (int i = 0; i < numNodes; i++) {
+            for (int j = 0; j < numNodes; j++) {
+                if (followees[i][j])
+                    numEdges++;
+            }
+            if (numEdges > MAX_EDGES)
+                throw tooManyEdges(numNodes, numEdges);
+            followeeStart[i + 1] = (int) numEdges;
+        }
+        int[] edges = new int[(int) numEdges];
+        int k = 0;
+        for (int i = 0; i < numNodes; i++) {
+            for (int j = 0; j < numNodes; j++) {
+                if (followees[i][j])
+                    edges[k++] = j;
+            }
+        }
+        return new FollowGraph(numNodes, followeeStart, edges);
+    }
+
+    private static IllegalArgumentException tooManyEdges(int numNodes, long numEdges) {
+        return new IllegalArgumentException("a follow graph of " + numNodes + " nodes with " + numEdges
+                + " edges does not fit in int offsets; at most " + MAX_EDGES + " edges are supported");
+    }
+
+    /** @return the number of failed trials before the next success of probability {@code p} */
+    private static long nextGap(Random random, double p, double logOfMiss) {
+        if (p >= 1)
+            return 0;
+        if (p <= 0)
+            return Long.MAX_VALUE / 2;
+        //1 - nextDouble() is in (0, 1], so its log is finite
+        return (long) (Math.log(1 - random.nextDouble()) / logOfMiss);
+    }
+
+    public int numNodes() {
+        return numNodes;
+    }
+
+    /** @return the number of follow edges */
+    public int numEdges() {
+        return followees.length;
+    }
+
+    /** @return the nodes {@code node} follows, in increasing order */
+    public int[] getFollowees(int node) {
+        return Arrays.copyOfRange(followees, followeeStart[node], followeeStart[node + 1]);
+    }
+
+    /** @return the number of nodes {@code node} follows */
+    public int numFollowees(int node) {
+        return followeeStart[node + 1] - followeeStart[node];
+    }
+
+    /** @return the {@code k}-th node {@code node} follows, in increasing order */
+    public int getFollowee(int node, int k) {
+        return followees[followeeStart[node] + k];
+    }
+
+    /** @return the number of nodes following {@code node} */
+    public int numFollowers(int node) {
+        return followerStart[node + 1] - followerStart[node];
+    }
+
+    /** @return the {@code k}-th node following {@code node}, in increasing order */
+    public int getFollower(int node, int k) {
+        return followers[followerStart[node] + k];
+    }
+
+    /** @return true if {@code follower} follows {@code followee} */
+    public boolean follows(int follower, int followee) {
+        return Arrays.binarySearch(followees, followeeStart[follower], followeeStart[follower + 1], followee) >= 0;
+    }
+}
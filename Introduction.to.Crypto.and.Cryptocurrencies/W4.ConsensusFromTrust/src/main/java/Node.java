@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 public interface Node {
@@ -10,6 +11,19 @@ public interface Node {
     /** {@code followees[i]} is true if and only if this node follows node {@code i} */
     void setFollowees(boolean[] followees);
 
+    /**
+     * {@code followees} lists, in increasing order, the nodes out of {@code numNodes} that this
+     * node follows. Simulations of many nodes call this instead of
+     * {@link #setFollowees(boolean[])}; by default it builds the boolean array and passes it on,
+     * which nodes that want to keep their memory proportional to their followees override.
+     */
+    default void setFollowees(int[] followees, int numNodes) {
+        boolean[] followeeFlags = new boolean[numNodes];
+        for (int followee : followees)
+            followeeFlags[followee] = true;
+        setFollowees(followeeFlags);
+    }
+
     /** initialize proposal list of transactions */
     void setPendingTransaction(Set<Transaction> pendingTransactions);
 
@@ -20,6 +34,37 @@ public interface Node {
      */
     Set<Transaction> sendToFollowers();
 
-    /** receive candidates from other nodes. */
+    /**
+     * @return the transactions to send to my followers in a simulation that only gossips deltas:
+     *         those added to my proposals since the last call, all of them on the first call.
+     *         Followers merge what they receive into what they already have, so this is enough
+     *         for them to end up with the same sets as if they got {@link #sendToFollowers()} every
+     *         round. By default all of {@link #sendToFollowers()} is sent again.
+     */
+    default Set<Transaction> sendDeltaToFollowers() {
+        return sendToFollowers();
+    }
+
+    /**
+     * receive candidates from other nodes. {@code candidates} is a view of the proposals of this
+     * round whose candidates are created as it is walked; the {@link TransactionSet}s behind it are
+     * shared with the other followers of each sender and refilled in the next round, so neither the
+     * view nor its candidates' sets may be kept after this call returns.
+     */
     void receiveFromFollowees(Set<Candidate> candidates);
+
+    /**
+     * receive the proposals of this round, {@code proposals.get(k)} being the valid transactions
+     * followee {@code senders[k]} sent. The sets are shared with the other followers of the sender,
+     * and the sets, the list and the array are all refilled in the next round, so they must be
+     * neither modified nor kept after this call returns. By default they are passed
+     * on as candidates, created as they are walked, to {@link #receiveFromFollowees(Set)}, which is
+     * not called if there are none; nodes that merge whole proposals override this to work on the
+     * sets directly.
+     */
+    default void receiveProposals(List<TransactionSet> proposals, int[] senders) {
+        Set<Candidate> candidates = new CandidateView(proposals, senders);
+        if (!candidates.isEmpty())
+            receiveFromFollowees(candidates);
+    }
 }
\ No newline at end of file
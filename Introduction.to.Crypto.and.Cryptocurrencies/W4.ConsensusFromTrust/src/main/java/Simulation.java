@@ -7,7 +7,6 @@
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
-import java.util.HashMap;
 
 public class Simulation {
 
@@ -17,21 +16,26 @@ public class Simulation {
         // p_malicious (.15, .30, .45), p_txDistribution (.01, .05, .10),
         // and numRounds (10, 20). You should try to test your CompliantNode
         // code for all 3x3x3x2 = 54 combinations.
+        // Five optional ones follow: numNodes (100), numTx (500), the seed of
+        // the random choices, which makes a run repeatable, the number of
+        // threads running the rounds (all processors), which does not change the result,
+        // and whether nodes only send what they learned since the last round (false).
 
-        int numNodes = 100;
         double p_graph = Double.parseDouble(args[0]); // parameter for random graph: prob. that an edge will exist
         double p_malicious = Double.parseDouble(args[1]); // prob. that a node will be set to be malicious
         double p_txDistribution = Double.parseDouble(args[2]); // probability of assigning an initial transaction to each node
         int numRounds = Integer.parseInt(args[3]); // number of simulation rounds your nodes will run for
-
-        int ycmTrustedTxCountMax = 0;
-        boolean ycmGlobalConsensusReachedFlag = false;
+        int numNodes = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+        int numTx = args.length > 5 ? Integer.parseInt(args[5]) : 500;
+        Random random = args.length > 6 ? new Random(Long.parseLong(args[6])) : new Random();
+        int numThreads = args.length > 7 ? Integer.parseInt(args[7]) : Runtime.getRuntime().availableProcessors();
+        boolean deltaGossip = args.length > 8 && Boolean.parseBoolean(args[8]);
 
 
         // pick which nodes are malicious and which are compliant
         Node[] nodes = new Node[numNodes];
         for (int i = 0; i < numNodes; i++) {
-            if (Math.random() < p_malicious)
+            if (random.nextDouble() < p_malicious)
                 // When you are ready to try testing with malicious nodes, replace the
                 // instantiation below with an instantiation of a MaliciousNode
                 //YCM:
@@ -42,120 +46,48 @@ public class Simulation {
         }
 
 
-        // initialize random follow graph
-        boolean[][] followees = new boolean[numNodes][numNodes]; // followees[i][j] is true if i follows j
-        for (int i = 0; i < numNodes; i++) {
-            for (int j = 0; j < numNodes; j++) {
-                if (i == j) continue;
-                if (Math.random() < p_graph) { // p_graph is .1, .2, or .3
-                    followees[i][j] = true;
-                }
-            }
-        }
+        // initialize random follow graph, in which i follows j with probability p_graph
+        FollowGraph followGraph = FollowGraph.random(numNodes, p_graph, random);
 
         // notify all nodes of their followees
         for (int i = 0; i < numNodes; i++)
-            nodes[i].setFollowees(followees[i]);
+            nodes[i].setFollowees(followGraph.getFollowees(i), numNodes);
 
-        // initialize a set of 500 valid Transactions with random ids
-        int numTx = 500;    //TODO: original 500
-        HashSet<Integer> validTxIds = new HashSet<Integer>();
-        Random random = new Random();
-        for (int i = 0; i < numTx; i++) {
-            int r = random.nextInt();
-            validTxIds.add(r);
+        // initialize a set of numTx valid Transactions with random ids, one Transaction
+        // object per id shared by all nodes
+        HashSet<Transaction> validTxs = new HashSet<Transaction>();
+        while (validTxs.size() < numTx) {
+            validTxs.add(new Transaction(random.nextInt()));
         }
+        Transaction[] txs = validTxs.toArray(new Transaction[0]);
+        TransactionDictionary dictionary = new TransactionDictionary(validTxs);
 
-        // distribute the 500 Transactions throughout the nodes, to initialize
+        // distribute the Transactions throughout the nodes, to initialize
         // the starting state of Transactions each node has heard. The distribution
         // is random with probability p_txDistribution for each Transaction-Node pair.
         for (int i = 0; i < numNodes; i++) {
-            HashSet<Transaction> pendingTransactions = new HashSet<Transaction>();
-            for (Integer txID : validTxIds) {
-                if (Math.random() < p_txDistribution) // p_txDistribution is .01, .05, or .10.
-                    pendingTransactions.add(new Transaction(txID));
+            TransactionSet pendingTransactions = new TransactionSet(dictionary);
+            for (Transaction tx : txs) {
+                if (random.nextDouble() < p_txDistribution) // p_txDistribution is .01, .05, or .10.
+                    pendingTransactions.add(tx);
             }
             nodes[i].setPendingTransaction(pendingTransactions);
         }
 
 
-        // Simulate for numRounds times
-        for (int round = 0; round < numRounds; round++) { // numRounds is either 10 or 20
-
-            if (ycmGlobalConsensusReachedFlag) break;
-
-            System.out.println("STARTED ROUND "+round);
-            boolean ycmCurrentRoundConsensusReachedFlag = true;
-
-            // gather all the proposals into a map. The key is the index of the node receiving
-            // proposals. The value is an ArrayList containing 1x2 Integer arrays. The first
-            // element of each array is the id of the transaction being proposed and the second
-            // element is the index # of the node proposing the transaction.
-            //YCM: The given comment is wrong. it is no longer an arraylist, it is now a hashmap
-            HashMap<Integer, Set<Candidate>> allProposals = new HashMap<>();
-
-            //YCM: summary of this nested for-loop
-            //YCM: for a given node node-i, it reached its own consensus and therefore will broadcast this set to all its followers
-            //YCM:   all tx that node-i trust will be put into node-j's proposal
-            //YCM:   this proposal is a set of candidate, a candidate is a tx (also tag who proposed it, i)
-            //YCM: at the end of the loops, allProposals[k] contains all the candidates proposed by the nodes that node-k follows.
-            //YCM: if a tx is proposed by multiple senders say 5 senders, we will have 5 candidate instances which all points to the same tx
-            for (int i = 0; i < numNodes; i++) {
-                Set<Transaction> proposals = nodes[i].sendToFollowers();
-                for (Transaction tx : proposals) {
-                    if (!validTxIds.contains(tx.id))
-                        continue; // ensure that each tx is actually valid
-
-                    for (int j = 0; j < numNodes; j++) {
-                        if (!followees[j][i]) continue; // tx only matters if j follows i
-
-                        //YCM: upon reaching to this point, for this particular i-j pair, we have:
-                        //YCM: node j follow node i, and node i has a proposal to send to j
-
-                        if (!allProposals.containsKey(j)) {
-                            Set<Candidate> candidates = new HashSet<>();
-                            allProposals.put(j, candidates);
-                        }
-
-                        Candidate candidate = new Candidate(tx, i);
-                        allProposals.get(j).add(candidate);
-                    }   //YCM: at the end of this for-loop, all node j that follow i, will have
-                        //YCM: a tx candidate (taken and loop from j's consensus) pushed to j (from i)
-                        //YCM: all tx candidates (broadcasted from nodes i trust) is retrievable via allProposals
-                }
-
-                //YCM: this is a short method (part 1) to output if all nodes that output some tx (tx size>0),
-                //YCM: their tx size are all equal
-                if (proposals.size()>0) {
-                    if (proposals.size()==ycmTrustedTxCountMax) {
-                        //do nothing
-                    } else {
-                        ycmCurrentRoundConsensusReachedFlag = false;
-                        //System.out.println("Node "+i+" has set current consensus flag to false because its node size is "+proposals.size()+" and current tx max is "+ycmTrustedTxCountMax);
-                        if (proposals.size()>ycmTrustedTxCountMax) {
-                            ycmTrustedTxCountMax = proposals.size();
-                            //System.out.println("Node "+i+ " propose node size "+ycmTrustedTxCountMax+" and is now the local maximum");
-                        }
-                    }
-                } else {
-                    //System.out.println("Bypassed. We purposely ignore this node because this node's proposals size is 0");
-                }
-            }
-
-            // Distribute the Proposals to their intended recipients as Candidates
-            for (int i = 0; i < numNodes; i++) {
-                if (allProposals.containsKey(i))
-                    nodes[i].receiveFromFollowees(allProposals.get(i));
-            }
-
-            //YCM: this is a short method (part 2) to output if all nodes that output some tx (tx size>0),
-            //YCM: their tx size are all equal
-            if (ycmCurrentRoundConsensusReachedFlag) {
-                ycmGlobalConsensusReachedFlag = true;
-                System.out.println("REACHED CONSENSUS at ROUND "+round);
-            }
-
+        // Simulate for numRounds times, numRounds is either 10 or 20
+        SimulationEngine engine = new SimulationEngine(nodes, followGraph, dictionary, numThreads, deltaGossip);
+        int round = 0;
+        while (round < numRounds && !engine.isConsensusReached()) {
+            System.out.println("STARTED ROUND " + round);
+            engine.runRound();
+            System.out.println("DELIVERED " + engine.getDeliveredLastRound() + " TXS in ROUND " + round);
+            if (engine.isConsensusReached())
+                System.out.println("REACHED CONSENSUS at ROUND " + round);
+            round++;
         }
+        System.out.println("DELIVERED " + engine.getDeliveredTotal() + " TXS in " + round + " ROUNDS");
+        engine.shutdown();
 
         // print results
         /*
@@ -169,4 +101,3 @@ public class Simulation {
         */
     }
 }
-
@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the rounds of a simulation on a {@link FollowGraph}. Each round every node sends its
+ * proposals, of which the valid ones are kept as one {@link TransactionSet} shared by all its
+ * followers, and every node then receives the sets of its followees through
+ * {@link Node#receiveProposals(List, int[])}. The transactions of a simulation are interned in a
+ * {@link TransactionDictionary}, so a set takes one bit per transaction of the simulation and a
+ * node can merge a whole proposal with a word-wise OR.
+ * <p>
+ * A round runs in two phases on a fork-join pool: first all nodes send, then, once all of them
+ * have, all nodes receive. Instead of senders pushing proposals into shared buckets, each
+ * receiver gathers those of its followees itself, in increasing followee order, so no two threads
+ * ever write to the same list and every receiver gets its proposals in the same order whatever
+ * the number of threads. A run is therefore as deterministic as the nodes are.
+ * <p>
+ * The buffers of a round are kept for the next one: each sender refills the same set with what it
+ * sends, and each receiver the same list with the sets of its followees, whose numbers are read
+ * from the graph once, on the first round.
+ * <p>
+ * In delta mode the engine sends what {@link Node#sendDeltaToFollowers()} returns instead of the
+ * full {@link Node#sendToFollowers()}, which is then only asked for its size by the consensus
+ * check. Either way the engine counts the transactions it delivers, one per follower of each
+ * sender, to model the bandwidth a round takes.
+ */
+public class SimulationEngine {
+
+    /** number of nodes a single task handles itself instead of splitting further */
+    private static final int BATCH_SIZE = 16;
+
+    private final Node[] nodes;
+    private final FollowGraph graph;
+    private final TransactionDictionary validTxs;
+    private final ForkJoinPool forkJoinPool;
+    private final boolean deltaGossip;
+
+    /** sent[i] holds the valid transactions node i sent in the current round, null while it has not sent any */
+    private final TransactionSet[] sent;
+    /** followeesOf[j] lists the followees of node j, and proposalsOf[j] what they sent, once j has received */
+    private final int[][] followeesOf;
+    private final List<ArrayList<TransactionSet>> proposalsOf;
+    /** proposalSizes[i] is the number of transactions node i proposed in the current round */
+    private final int[] proposalSizes;
+
+    //YCM: state of the check whether all nodes that output some tx output as many of them
+    private int trustedTxCountMax = 0;
+    private boolean consensusReached = false;
+
+    /** transactions delivered in the last round and in all rounds so far */
+    private long deliveredLastRound = 0;
+    private long deliveredTotal = 0;
+
+    /** what a phase does for one node */
+    private interface NodeStep {
+        void run(int node);
+    }
+
+    /** runs a step for a range of nodes, splitting it across the pool */
+    private static final class PhaseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final NodeStep step;
+        private final int from, to;
+
+        PhaseTask(NodeStep step, int from, int to) {
+            this.step = step;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PhaseTask(step, from, mid), new PhaseTask(step, mid, to));
+                return;
+            }
+            for (int node = from; node < to; node++)
+                step.run(node);
+        }
+    }
+
+    /**
+     * Creates an engine for {@code nodes}, which must have been told their followees in
+     * {@code graph} and given their pending transactions, with one worker thread per available
+     * processor; transactions not in {@code validTxs} are never delivered
+     */
+    public SimulationEngine(Node[] nodes, FollowGraph graph, TransactionDictionary validTxs) {
+        this(nodes, graph, validTxs, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** same as {@link #SimulationEngine(Node[], FollowGraph, TransactionDictionary)} with {@code parallelism} worker threads */
+    public SimulationEngine(Node[] nodes, FollowGraph graph, TransactionDictionary validTxs, int parallelism) {
+        this(nodes, graph, validTxs, parallelism, false);
+    }
+
+    /**
+     * same as {@link #SimulationEngine(Node[], FollowGraph, TransactionDictionary, int)}, sending
+     * only the deltas of the nodes if {@code deltaGossip} is true
+     */
+    public SimulationEngine(Node[] nodes, FollowGraph graph, TransactionDictionary validTxs, int parallelism,
+            boolean deltaGossip) {
+        this.nodes = nodes;
+        this.graph = graph;
+        this.validTxs = validTxs;
+        forkJoinPool = new ForkJoinPool(parallelism);
+        this.deltaGossip = deltaGossip;
+        sent = new TransactionSet[nodes.length];
+        proposalSizes = new int[nodes.length];
+        followeesOf = new int[nodes.length][];
+        proposalsOf = new ArrayList<ArrayList<TransactionSet>>(nodes.length);
+        for (int j = 0; j < nodes.length; j++)
+            proposalsOf.add(null);
+    }
+
+    /** Stops the worker threads; the engine must not be used afterwards */
+    public void shutdown() {
+        forkJoinPool.shutdown();
+    }
+
+    /** @return true once the nodes that output some transactions all output as many */
+    public boolean isConsensusReached() {
+        return consensusReached;
+    }
+
+    /** @return the number of transactions delivered in the last round, counting one per receiver */
+    public long getDeliveredLastRound() {
+        return deliveredLastRound;
+    }
+
+    /** @return the number of transactions delivered in all rounds so far, counting one per receiver */
+    public long getDeliveredTotal() {
+        return deliveredTotal;
+    }
+
+    /**
+     * Runs up to {@code numRounds} rounds, stopping early once consensus is reached, without
+     * printing anything; callers that report on each round run them with {@link #runRound()}
+     *
+     * @return the number of rounds run
+     */
+    public int run(int numRounds) {
+        int round = 0;
+        while (round < numRounds && !consensusReached) {
+            runRound();
+            round++;
+        }
+        return round;
+    }
+
+    /** Runs one round: all nodes send their proposals, then all nodes receive their candidates */
+    public void runRound() {
+        forkJoinPool.invoke(new PhaseTask(new NodeStep() {
+            @Override
+            public void run(int node) {
+                send(node);
+            }
+        }, 0, nodes.length));
+
+        //YCM: the consensus check depends on the order of the nodes, so it runs between the phases
+        boolean roundConsensusReached = true;
+        deliveredLastRound = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            if (proposalSizes[i] > 0 && proposalSizes[i] != trustedTxCountMax) {
+                roundConsensusReached = false;
+                trustedTxCountMax = Math.max(trustedTxCountMax, proposalSizes[i]);
+            }
+            if (graph.numFollowers(i) > 0)
+                deliveredLastRound += (long) sent[i].size() * graph.numFollowers(i);
+        }
+        deliveredTotal += deliveredLastRound;
+
+        forkJoinPool.invoke(new PhaseTask(new NodeStep() {
+            @Override
+            public void run(int node) {
+                receive(node);
+            }
+        }, 0, nodes.length));
+
+        if (roundConsensusReached)
+            consensusReached = true;
+    }
+
+    private void send(int i) {
+        Set<Transaction> proposals = deltaGossip ? nodes[i].sendDeltaToFollowers() : nodes[i].sendToFollowers();
+        proposalSizes[i] = deltaGossip ? nodes[i].sendToFollowers().size() : proposals.size();
+        if (graph.numFollowers(i) == 0)
+            return;
+        if (sent[i] == null)
+            sent[i] = new TransactionSet(validTxs);
+        //YCM: the sender goes on changing its own set while its followers receive, so they get a copy
+        if (proposals instanceof TransactionSet && ((TransactionSet) proposals).getDictionary() == validTxs) {
+            sent[i].copyFrom((TransactionSet) proposals);
+        } else {
+            sent[i].clear();
+            for (Transaction tx : proposals) {
+                if (validTxs.contains(tx)) // ensure that each tx is actually valid
+                    sent[i].add(tx);
+            }
+        }
+    }
+
+    private void receive(int j) {
+        int numFollowees = graph.numFollowees(j);
+        if (numFollowees == 0)
+            return;
+        ArrayList<TransactionSet> proposals = proposalsOf.get(j);
+        if (proposals == null) {
+            followeesOf[j] = new int[numFollowees];
+            for (int k = 0; k < numFollowees; k++)
+                followeesOf[j][k] = graph.getFollowee(j, k);
+            proposals = new ArrayList<TransactionSet>(numFollowees);
+            for (int k = 0; k < numFollowees; k++)
+                proposals.add(null);
+            proposalsOf.set(j, proposals);
+        }
+        int[] followees = followeesOf[j];
+        for (int k = 0; k < numFollowees; k++)
+            proposals.set(k, sent[followees[k]]);
+        // Distribute the Proposals to their intended recipients
+        nodes[j].receiveProposals(proposals, followees);
+    }
+}
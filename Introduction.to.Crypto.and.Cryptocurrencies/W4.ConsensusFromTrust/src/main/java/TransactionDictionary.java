@@ -0,0 +1,56 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * The fixed universe of transactions of a simulation, each interned to an index from 0 to
+ * {@code size() - 1} in increasing id order, so that sets of them can be stored as bitsets, see
+ * {@link TransactionSet}.
+ */
+public class TransactionDictionary {
+
+    /** ids[i] is the id of the transaction of index i, in increasing order */
+    private final int[] ids;
+    private final Transaction[] transactions;
+
+    /** Creates a dictionary of {@code transactions}, keeping one object per id */
+    public TransactionDictionary(Collection<Transaction> transactions) {
+        Transaction[] sorted = transactions.toArray(new Transaction[0]);
+        Arrays.sort(sorted, new Comparator<Transaction>() {
+            @Override
+            public int compare(Transaction a, Transaction b) {
+                return Integer.compare(a.id, b.id);
+            }
+        });
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || sorted[n - 1].id != sorted[i].id)
+                sorted[n++] = sorted[i];
+        }
+        this.transactions = Arrays.copyOf(sorted, n);
+        ids = new int[n];
+        for (int i = 0; i < n; i++)
+            ids[i] = this.transactions[i].id;
+    }
+
+    /** @return the number of transactions in the dictionary */
+    public int size() {
+        return ids.length;
+    }
+
+    /** @return the index of {@code tx}, or -1 if it is not in the dictionary */
+    public int indexOf(Transaction tx) {
+        int index = Arrays.binarySearch(ids, tx.id);
+        return index >= 0 ? index : -1;
+    }
+
+    /** @return true if {@code tx} is in the dictionary */
+    public boolean contains(Transaction tx) {
+        return indexOf(tx) >= 0;
+    }
+
+    /** @return the transaction of index {@code index} */
+    public Transaction get(int index) {
+        return transactions[index];
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of the transactions of a {@link TransactionDictionary}, stored as a bitset over their
+ * indexes. Adding or removing all of another set of the same dictionary is a word-wise OR or AND
+ * NOT, and the set is walked in increasing id order. Transactions not in the dictionary cannot be
+ * added.
+ */
+public class TransactionSet extends AbstractSet<Transaction> {
+
+    private final TransactionDictionary dictionary;
+    private final BitSet bits;
+
+    /** Creates an empty set of transactions of {@code dictionary} */
+    public TransactionSet(TransactionDictionary dictionary) {
+        this.dictionary = dictionary;
+        bits = new BitSet(dictionary.size());
+    }
+
+    /** Creates a copy of {@code set} */
+    public TransactionSet(TransactionSet set) {
+        dictionary = set.dictionary;
+        bits = (BitSet) set.bits.clone();
+    }
+
+    /** Creates a set of the transactions of {@code transactions} that are in {@code dictionary} */
+    public TransactionSet(TransactionDictionary dictionary, Collection<Transaction> transactions) {
+        this(dictionary);
+        for (Transaction tx : transactions) {
+            int index = dictionary.indexOf(tx);
+            if (index >= 0)
+                bits.set(index);
+        }
+    }
+
+    /**
+     * Makes this set hold the transactions of {@code set}, which must be of the same dictionary,
+     * reusing the words it already has
+     */
+    public void copyFrom(TransactionSet set) {
+        if (set.dictionary != dictionary)
+            throw new IllegalArgumentException("the sets are of different dictionaries");
+        bits.clear();
+        bits.or(set.bits);
+    }
+
+    public TransactionDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /** @throws IllegalArgumentException if {@code tx} is not in the dictionary */
+    @Override
+    public boolean add(Transaction tx) {
+        int index = dictionary.indexOf(tx);
+        if (index < 0)
+            throw new IllegalArgumentException("transaction " + tx.id + " is not in the dictionary");
+        if (bits.get(index))
+            return false;
+        bits.set(index);
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Transaction> c) {
+        if (!(c instanceof TransactionSet) || ((TransactionSet) c).dictionary != dictionary)
+            return super.addAll(c);
+        int before = bits.cardinality();
+        bits.or(((TransactionSet) c).bits);
+        return bits.cardinality() != before;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        if (!(c instanceof TransactionSet) || ((TransactionSet) c).dictionary != dictionary)
+            return super.removeAll(c);
+        int before = bits.cardinality();
+        bits.andNot(((TransactionSet) c).bits);
+        return bits.cardinality() != before;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Transaction))
+            return false;
+        int index = dictionary.indexOf((Transaction) o);
+        return index >= 0 && bits.get(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o))
+            return false;
+        bits.clear(dictionary.indexOf((Transaction) o));
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        bits.clear();
+    }
+
+    @Override
+    public int size() {
+        return bits.cardinality();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    @Override
+    public Iterator<Transaction> iterator() {
+        return new Iterator<Transaction>() {
+            private int next = bits.nextSetBit(0);
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Transaction next() {
+                if (next < 0)
+                    throw new NoSuchElementException();
+                last = next;
+                next = bits.nextSetBit(next + 1);
+                return dictionary.get(last);
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0)
+                    throw new IllegalStateException();
+                bits.clear(last);
+                last = -1;
+            }
+        };
+    }
+}
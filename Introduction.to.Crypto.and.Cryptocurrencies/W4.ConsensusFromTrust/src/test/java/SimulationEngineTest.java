@@ -0,0 +1,94 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SimulationEngine}
+ * <p>
+ * Test Strategy:
+ * Test 1: gossiping deltas ends with the same sets on every node as gossiping whole proposals
+ * Test 2: a seeded simulation ends with the same sets on every node whatever the number of threads
+ */
+public class SimulationEngineTest {
+
+    private static final long SEED = 7;
+    private static final int NUM_NODES = 200;
+    private static final int NUM_TXS = 300;
+    private static final int NUM_ROUNDS = 10;
+    private static final double P_GRAPH = .1, P_MALICIOUS = .3, P_TX_DISTRIBUTION = .05;
+
+    /** @return what each node sends to its followers after a seeded simulation of {@code NUM_ROUNDS} rounds */
+    private static List<Set<Transaction>> simulate(int parallelism, boolean deltaGossip) {
+        final Random random = new Random(SEED);
+        final Node[] nodes = new Node[NUM_NODES];
+        for (int i = 0; i < NUM_NODES; i++) {
+            if (random.nextDouble() < P_MALICIOUS)
+                nodes[i] = new MaliciousNode(P_GRAPH, P_MALICIOUS, P_TX_DISTRIBUTION, NUM_ROUNDS);
+            else
+                nodes[i] = new CompliantNode(P_GRAPH, P_MALICIOUS, P_TX_DISTRIBUTION, NUM_ROUNDS);
+        }
+        final FollowGraph graph = FollowGraph.random(NUM_NODES, P_GRAPH, random);
+        for (int i = 0; i < NUM_NODES; i++)
+            nodes[i].setFollowees(graph.getFollowees(i), NUM_NODES);
+
+        final ArrayList<Transaction> txs = new ArrayList<Transaction>();
+        final HashSet<Transaction> valid = new HashSet<Transaction>();
+        while (valid.size() < NUM_TXS) {
+            final Transaction tx = new Transaction(random.nextInt());
+            if (valid.add(tx))
+                txs.add(tx);
+        }
+        final TransactionDictionary dictionary = new TransactionDictionary(valid);
+        for (int i = 0; i < NUM_NODES; i++) {
+            final TransactionSet pending = new TransactionSet(dictionary);
+            for (Transaction tx : txs) {
+                if (random.nextDouble() < P_TX_DISTRIBUTION)
+                    pending.add(tx);
+            }
+            nodes[i].setPendingTransaction(pending);
+        }
+
+        final SimulationEngine engine = new SimulationEngine(nodes, graph, dictionary, parallelism, deltaGossip);
+        try {
+            engine.run(NUM_ROUNDS);
+        } finally {
+            engine.shutdown();
+        }
+        final List<Set<Transaction>> sets = new ArrayList<Set<Transaction>>(NUM_NODES);
+        for (Node node : nodes)
+            sets.add(new HashSet<Transaction>(node.sendToFollowers()));
+        return sets;
+    }
+
+    /** checks that the nodes ended with the same sets, and that some of them learned transactions */
+    private static void assertSameSets(List<Set<Transaction>> expected, List<Set<Transaction>> actual) {
+        assertEquals(expected.size(), actual.size());
+        int learned = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("node " + i, expected.get(i), actual.get(i));
+            if (expected.get(i).size() > NUM_TXS * P_TX_DISTRIBUTION * 2)
+                learned++;
+        }
+        assertTrue(learned > 0);
+    }
+
+    // Test 1: gossiping deltas ends with the same sets on every node as gossiping whole proposals
+    @Test
+    public void testDeltaGossip() {
+        assertSameSets(simulate(1, false), simulate(1, true));
+    }
+
+    // Test 2: a seeded simulation ends with the same sets on every node whatever the number of threads
+    @Test
+    public void testParallelism() {
+        assertSameSets(simulate(1, false), simulate(4, false));
+        assertSameSets(simulate(1, true), simulate(4, true));
+    }
+}
@@ -0,0 +1,204 @@
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import benchmarks.ChainWorkload;
+
+/** {@link ChainWorkload} on blocks whose transactions all pay to and are signed by one key */
+public class BlockChainWorkload implements ChainWorkload {
+
+    private KeyPair owner;
+    private Random random;
+    private int txsPerBlock;
+
+    private Block genesis;
+    private List<Block> blocks;
+    /** the transactions of {@code blocks}, coinbases included, in their wire encoding */
+    private ByteBuffer encodedTxs;
+    /** the outputs at the tip of the generated chain, with their values */
+    private Outputs generatedOutputs;
+
+    private BlockChain blockChain;
+    private BlockHandler blockHandler;
+    /** the outputs at the tip of {@code blockChain} that no pooled transaction spends yet */
+    private Outputs tipOutputs;
+
+    /** a set of outputs to pick random ones to spend from */
+    private static final class Outputs {
+        final ArrayList<UTXO> utxos = new ArrayList<UTXO>();
+        final ArrayList<Long> values = new ArrayList<Long>();
+
+        Outputs() {
+        }
+
+        Outputs(Outputs outputs) {
+            utxos.addAll(outputs.utxos);
+            values.addAll(outputs.values);
+        }
+
+        void add(Transaction tx) {
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                utxos.add(new UTXO(tx.getId(), i));
+                values.add(tx.getOutput(i).value);
+            }
+        }
+
+        boolean isEmpty() {
+            return utxos.isEmpty();
+        }
+
+        /** removes a random output, and @return a signed transaction moving its value to a new one */
+        Transaction spendRandom(Random random, KeyPair owner) throws SignatureException {
+            int i = random.nextInt(utxos.size());
+            int last = utxos.size() - 1;
+            UTXO utxo = utxos.get(i);
+            long value = values.get(i);
+            utxos.set(i, utxos.get(last));
+            values.set(i, values.get(last));
+            utxos.remove(last);
+            values.remove(last);
+
+            Main.Tx tx = new Main.Tx();
+            tx.addInput(utxo.getTxHash(), utxo.getIndex());
+            tx.addOutput(value, owner.getPublic());
+            tx.signTx(owner.getPrivate(), 0);
+            return tx;
+        }
+    }
+
+    @Override
+    public void generate(int chainLength, double forkRate, int txsPerBlock, int utxoSetSize, long seed)
+            throws Exception {
+        this.owner = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        this.random = new Random(seed);
+        this.txsPerBlock = Math.min(txsPerBlock, utxoSetSize);
+        genesis = new Block(null, owner.getPublic());
+        genesis.finalize();
+        blocks = new ArrayList<Block>();
+
+        Main.Tx split = new Main.Tx();
+        split.addInput(genesis.getCoinbase().getHash(), 0);
+        for (int i = 0; i < utxoSetSize; i++)
+            split.addOutput(Block.COINBASE / utxoSetSize, owner.getPublic());
+        split.signTx(owner.getPrivate(), 0);
+        Block prev = newBlock(genesis, split);
+        blocks.add(prev);
+        generatedOutputs = new Outputs();
+        generatedOutputs.add(split);
+
+        for (int height = 2; height <= chainLength; height++) {
+            //the outputs created by a block can only be spent from the next block on
+            Outputs created = new Outputs();
+            Transaction[] txs = new Transaction[this.txsPerBlock];
+            for (int i = 0; i < txs.length && !generatedOutputs.isEmpty(); i++) {
+                txs[i] = generatedOutputs.spendRandom(random, owner);
+                created.add(txs[i]);
+            }
+            //the last block never has a competitor, so the generated chain ends on it
+            if (height < chainLength && random.nextDouble() < forkRate)
+                blocks.add(newBlock(prev, Arrays.copyOf(txs, txs.length / 2)));
+            prev = newBlock(prev, txs);
+            blocks.add(prev);
+            generatedOutputs.utxos.addAll(created.utxos);
+            generatedOutputs.values.addAll(created.values);
+        }
+        encodeTransactions();
+    }
+
+    private void encodeTransactions() {
+        int size = 0;
+        for (Block block : blocks) {
+            size += TransactionCodec.encodedSize(block.getCoinbase());
+            for (Transaction tx : block.getTransactions())
+                size += TransactionCodec.encodedSize(tx);
+        }
+        encodedTxs = ByteBuffer.allocate(size);
+        for (Block block : blocks) {
+            TransactionCodec.encode(block.getCoinbase(), encodedTxs);
+            for (Transaction tx : block.getTransactions())
+                TransactionCodec.encode(tx, encodedTxs);
+        }
+        encodedTxs.flip();
+    }
+
+    private Block newBlock(Block parent, Transaction... txs) {
+        Block block = new Block(parent.getHash(), owner.getPublic());
+        for (Transaction tx : txs) {
+            if (tx != null)
+                block.addTransaction(tx);
+        }
+        block.finalize();
+        return block;
+    }
+
+    @Override
+    public int numBlocks() {
+        return blocks.size();
+    }
+
+    /** starts from an empty signature cache every time, as a node catching up would */
+    @Override
+    public int replay() {
+        VerifiedSignatureCache.getDefault().clear();
+        blockChain = new BlockChain(genesis);
+        blockHandler = new BlockHandler(blockChain);
+        int added = 0;
+        for (Block block : blocks) {
+            if (blockHandler.processBlock(block))
+                added++;
+        }
+        tipOutputs = new Outputs(generatedOutputs);
+        return added;
+    }
+
+    @Override
+    public void discardChain() {
+        blockChain = null;
+        blockHandler = null;
+        tipOutputs = null;
+    }
+
+    @Override
+    public Object getMaxHeightUTXOPool() {
+        return blockChain.getMaxHeightUTXOPool();
+    }
+
+    @Override
+    public void refillTransactionPool() throws Exception {
+        for (int i = 0; i < txsPerBlock && !tipOutputs.isEmpty(); i++)
+            blockHandler.processTx(tipOutputs.spendRandom(random, owner));
+    }
+
+    @Override
+    public int decodeViews() {
+        List<TransactionView> views = TransactionCodec.decodeAll(encodedTxs.duplicate());
+        for (TransactionView view : views)
+            view.getId();
+        return views.size();
+    }
+
+    @Override
+    public int decodeTransactions() {
+        List<TransactionView> views = TransactionCodec.decodeAll(encodedTxs.duplicate());
+        for (TransactionView view : views)
+            view.getId();
+        for (TransactionView view : views)
+            view.toTransaction();
+        return views.size();
+    }
+
+    @Override
+    public Object createBlock() {
+        Block block = blockHandler.createBlock(owner.getPublic());
+        if (block != null) {
+            for (Transaction tx : block.getTransactions())
+                tipOutputs.add(tx);
+        }
+        return block;
+    }
+}
@@ -0,0 +1,125 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the block chain on generated chains of {@code chainLength} blocks, with
+ * {@code txsPerBlock} transactions each over a UTXO set of {@code utxoSetSize} outputs, and a
+ * competing block before a fraction {@code forkRate} of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockChainBenchmark {
+
+    private static final int CHAIN_LENGTH = 200;
+
+    @Param({"0", "0.1"})
+    public double forkRate;
+
+    @Param({"10", "100"})
+    public int txsPerBlock;
+
+    @Param({"1000", "100000"})
+    public int utxoSetSize;
+
+    private ChainWorkload workload;
+
+    /** the heap retained by the block chain, reported next to the time of {@code retainedMemory()} */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class MemoryCounters {
+        public long retainedBytesPerBlock;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedBytesPerBlock = 0;
+        }
+    }
+
+    /** fills the transaction pool before each block is mined; signing the transactions is not measured */
+    @State(Scope.Thread)
+    public static class PendingTransactions {
+        @Setup(Level.Invocation)
+        public void refill(BlockChainBenchmark benchmark) throws Exception {
+            benchmark.workload.refillTransactionPool();
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workloads.create(ChainWorkload.class, "BlockChainWorkload");
+        workload.generate(CHAIN_LENGTH, forkRate, txsPerBlock, utxoSetSize, 42);
+        workload.replay();
+    }
+
+    /** time per block of the max height chain, competing blocks included, of adding the whole generated chain to a new block chain */
+    @Benchmark
+    @OperationsPerInvocation(CHAIN_LENGTH)
+    public int addBlock() {
+        return workload.replay();
+    }
+
+    @Benchmark
+    public Object createBlock(PendingTransactions pending) {
+        return workload.createBlock();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object getMaxHeightUTXOPool() {
+        return workload.getMaxHeightUTXOPool();
+    }
+
+    /** time of decoding and hashing every generated transaction, without building any object graph */
+    @Benchmark
+    public int decodeViews() {
+        return workload.decodeViews();
+    }
+
+    /** time of decoding and hashing every generated transaction, and building a Transaction of each */
+    @Benchmark
+    public int decodeTransactions() {
+        return workload.decodeTransactions();
+    }
+
+    /**
+     * heap retained by a block chain of the whole generated chain, per block, as measured after
+     * the last replay of the iteration; JMH only reports aux counters in throughput and average
+     * time modes
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int retainedMemory(MemoryCounters counters) {
+        workload.discardChain();
+        long before = usedHeap();
+        int added = workload.replay();
+        counters.retainedBytesPerBlock = (usedHeap() - before) / workload.numBlocks();
+        return added;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,45 @@
+package benchmarks;
+
+/**
+ * A generated chain of blocks and the block chain operations benchmarked on it. Implemented by
+ * {@code BlockChainWorkload}.
+ */
+public interface ChainWorkload {
+
+    /**
+     * Generates {@code chainLength} blocks on top of a genesis block. The first one splits the
+     * genesis coinbase into {@code utxoSetSize} outputs; each of the others holds
+     * {@code txsPerBlock} transactions, each spending one of those outputs or of their successors
+     * into a new one, so the UTXO set keeps its size. With probability {@code forkRate} a block
+     * comes after a competing block at the same height holding half its transactions, which the
+     * chain first takes as its tip and then abandons.
+     */
+    void generate(int chainLength, double forkRate, int txsPerBlock, int utxoSetSize, long seed) throws Exception;
+
+    /** @return the number of blocks generated, competing ones included */
+    int numBlocks();
+
+    /** adds all generated blocks, in order, to a new block chain; @return how many were accepted */
+    int replay();
+
+    /** drops the block chain built by the last {@link #replay()}, if any */
+    void discardChain();
+
+    /** @return the UTXO pool at the tip of the block chain built by the last {@link #replay()} */
+    Object getMaxHeightUTXOPool();
+
+    /** puts {@code txsPerBlock} new transactions spending outputs at the tip in the transaction pool */
+    void refillTransactionPool() throws Exception;
+
+    /** @return the block {@code BlockHandler.createBlock} mines on the tip, from the transaction pool */
+    Object createBlock();
+
+    /**
+     * decodes the transactions of all generated blocks from their wire encoding into views and
+     * hashes each of them; @return how many were decoded
+     */
+    int decodeViews();
+
+    /** same as {@link #decodeViews()}, but also builds a {@code Transaction} from each view */
+    int decodeTransactions();
+}
@@ -0,0 +1,21 @@
+package benchmarks;
+
+/**
+ * Creates the workloads the benchmarks drive. JMH refuses benchmarks in the default package, and
+ * classes in a named package cannot refer to the default package the assignment classes live in,
+ * so each workload is implemented by a default package class next to them and looked up by name.
+ */
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    /** @return a new instance of the default package class {@code className}, as a {@code type} */
+    static <T> T create(Class<T> type, String className) {
+        try {
+            return type.cast(Class.forName(className).getConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot create workload " + className, e);
+        }
+    }
+}
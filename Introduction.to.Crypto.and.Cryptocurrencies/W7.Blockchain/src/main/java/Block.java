@@ -1,4 +1,5 @@
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
@@ -6,10 +7,13 @@ import java.util.ArrayList;
 
 public class Block {
 
-    public static final double COINBASE = 25;
+    public static final long COINBASE = 25 * Transaction.COIN;
 
     private byte[] hash;
     private byte[] prevBlockHash;
+    /** {@code hash} and {@code prevBlockHash} as keys, computed when first asked for */
+    private Hash256 id;
+    private Hash256 prevBlockId;
     private Transaction coinbase;
     private ArrayList<Transaction> txs;
 
@@ -20,6 +24,17 @@ public class Block {
         txs = new ArrayList<Transaction>();
     }
 
+    /**
+     * Creates a block read back from a {@link BlockStore}, which keeps {@code hash}, the hash it
+     * was finalized with, and takes over {@code coinbase} and {@code txs}
+     */
+    public Block(byte[] prevHash, byte[] hash, Transaction coinbase, ArrayList<Transaction> txs) {
+        prevBlockHash = prevHash;
+        this.hash = hash;
+        this.coinbase = coinbase;
+        this.txs = txs;
+    }
+
     public Transaction getCoinbase() {
         return coinbase;
     }
@@ -32,6 +47,20 @@ public class Block {
         return prevBlockHash;
     }
 
+    /** @return the hash of the block as a key, or null if it was not finalized */
+    public Hash256 getId() {
+        if (id == null && hash != null)
+            id = Hash256.of(hash);
+        return id;
+    }
+
+    /** @return the hash of the previous block as a key, or null for the genesis block */
+    public Hash256 getPrevBlockId() {
+        if (prevBlockId == null && prevBlockHash != null)
+            prevBlockId = Hash256.of(prevBlockHash);
+        return prevBlockId;
+    }
+
     public ArrayList<Transaction> getTransactions() {
         return txs;
     }
@@ -45,20 +74,15 @@ public class Block {
     }
 
     public byte[] getRawBlock() {
-        ArrayList<Byte> rawBlock = new ArrayList<Byte>();
+        int size = prevBlockHash != null ? prevBlockHash.length : 0;
+        for (int i = 0; i < txs.size(); i++)
+            size += txs.get(i).getRawTxSize();
+        ByteBuffer rawBlock = ByteBuffer.allocate(size);
         if (prevBlockHash != null)
-            for (int i = 0; i < prevBlockHash.length; i++)
-                rawBlock.add(prevBlockHash[i]);
-        for (int i = 0; i < txs.size(); i++) {
-            byte[] rawTx = txs.get(i).getRawTx();
-            for (int j = 0; j < rawTx.length; j++) {
-                rawBlock.add(rawTx[j]);
-            }
-        }
-        byte[] raw = new byte[rawBlock.size()];
-        for (int i = 0; i < raw.length; i++)
-            raw[i] = rawBlock.get(i);
-        return raw;
+            rawBlock.put(prevBlockHash);
+        for (int i = 0; i < txs.size(); i++)
+            txs.get(i).getRawTx(rawBlock);
+        return rawBlock.array();
     }
 
     public void finalize() {
@@ -66,6 +90,7 @@ public class Block {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
             md.update(getRawBlock());
             hash = md.digest();
+            id = null;
         } catch (NoSuchAlgorithmException x) {
             x.printStackTrace(System.err);
         }
@@ -8,9 +8,13 @@ public class BlockChain {
 
     public static final int CUT_OFF_AGE = 10;
 
+    //the max height block, moved on as soon as a block is added on top of it
     TreeBlock lastBlock;
     TreeBlock firstBlock;
 
+    //every block of the tree by its hash, so the parent of a new block is found with one lookup
+    Map<Hash256,TreeBlock> blocksByHash = new HashMap<Hash256,TreeBlock>();
+
     //when there is no entry, then we must be working on the mapping for genesis block
     Map<Block,UTXOPool> block2utxoMapping = new HashMap<Block,UTXOPool>();
 
@@ -24,6 +28,9 @@ public class BlockChain {
 
         int height;
 
+        //pooled transactions that conflicted with this block when it joined the main branch
+        List<Transaction> evicted;
+
         public TreeBlock(Block block) {
             this.block = block;
             this.children = new LinkedList<TreeBlock>();
@@ -37,17 +44,6 @@ public class BlockChain {
             return childNode;
         }
 
-        public TreeBlock getMaxHeightTreeBlock() {
-            //if we reach the end of the data structure (aka the chain)
-            //we return the last node (aka this node)
-            if (children==null || children.size()==0) return this;
-            //or we continue to go down the tree
-            return children.get(0).getMaxHeightTreeBlock();
-        }
-        public Block getMaxHeightBlock() {
-            return getMaxHeightTreeBlock().block;
-        }
-
         public List<TreeBlock> getChildren() { return this.children; }
     }
 
@@ -59,6 +55,7 @@ public class BlockChain {
         // IMPLEMENT THIS
         //create a new chain and its utxopool
         firstBlock = new TreeBlock(genesisBlock);
+        blocksByHash.put(genesisBlock.getId(), firstBlock);
         createFirstUTXOPool(genesisBlock);
         //also point the lastBlock to the genesis block
         lastBlock = firstBlock;
@@ -71,13 +68,13 @@ public class BlockChain {
     }
     private TreeBlock getMaxHeightTreeBlock() {
         // IMPLEMENT THIS
-        return lastBlock.getMaxHeightTreeBlock();
+        return lastBlock;
     }
 
     /** Get the UTXOPool for mining a new block on top of max height block */
     public UTXOPool getMaxHeightUTXOPool() {
         // IMPLEMENT THIS
-        return block2utxoMapping.get(lastBlock.getMaxHeightBlock());
+        return block2utxoMapping.get(lastBlock.block);
     }
 
     /** Get the transaction pool to mine a new block */
@@ -132,39 +129,48 @@ public class BlockChain {
     }
 
     private boolean addNewBlockByHash(Block newBlock, int heightLimit) {
-
-        String targetH = getHashString(newBlock.getPrevBlockHash());
-        //we search starting from the lastblock upwards
-        TreeBlock targetParentBlock = lastBlock;
-        while (true) {
-            //System.out.println("trying block "+ targetBlock+" height "+targetBlock.height);
-            String parentH = getHashString(targetParentBlock.block.getHash());
-            if (targetH.equals(parentH)) {
-                //we now test the height
-                int newHeight = targetParentBlock.height+1;
-
-                //if we try to insert to a block which is already cut off, we invalidate this block (return false)
-                //System.out.println("trying to insert at newheight "+newHeight+" with limit "+heightLimit);
-                if (newHeight<=heightLimit) return false;
-
-                //otherwise we try to process this insertion (and return true)
-
-                targetParentBlock.addChild(newBlock);
-                //if this new block is the first child of the parent block
-                if (targetParentBlock.children.size()==1) {
-                    lastBlock = targetParentBlock.getChildren().get(0);
-                }
-
-                //optionally cut the head of chain
-                int newHeightLimit = getHeightLimit();
-                forwardFirstBlock(newHeightLimit);
-
-                return true;
-
-            } else {
-                if (targetParentBlock.parent==null) return false;
-                else targetParentBlock = targetParentBlock.parent;
-            }
+        //the parent is looked up by its hash, no matter how long the chain is
+        TreeBlock targetParentBlock = blocksByHash.get(newBlock.getPrevBlockId());
+        if (targetParentBlock==null) return false;
+
+        //we now test the height
+        int newHeight = targetParentBlock.height+1;
+        //if we try to insert to a block which is already cut off, we invalidate this block (return false)
+        if (newHeight<=heightLimit) return false;
+        //otherwise we try to process this insertion (and return true)
+        TreeBlock newTreeBlock = targetParentBlock.addChild(newBlock);
+        blocksByHash.put(newBlock.getId(), newTreeBlock);
+        //the first block to get higher than the current max height block takes its place
+        if (newHeight>lastBlock.height) {
+            switchLastBlock(newTreeBlock);
+        }
+        //optionally cut the head of chain
+        int newHeightLimit = getHeightLimit();
+        forwardFirstBlock(newHeightLimit);
+        return true;
+    }
+
+    //makes newLastBlock the max height block, and puts back in the tx pool the transactions of the
+    //blocks on the branch we leave before taking out the ones of the blocks on the new branch
+    private void switchLastBlock(TreeBlock newLastBlock) {
+        TreeBlock oldBlock = lastBlock;
+        lastBlock = newLastBlock;
+        List<TreeBlock> connected = new ArrayList<TreeBlock>();
+        TreeBlock newBlock = newLastBlock;
+        while (newBlock.height>oldBlock.height) {
+            connected.add(newBlock);
+            newBlock = newBlock.parent;
+        }
+        while (newBlock!=oldBlock) {
+            txPool.restoreBlockTransactions(oldBlock.block, oldBlock.evicted, block2utxoMapping.get(oldBlock.parent.block));
+            oldBlock.evicted = null;
+            oldBlock = oldBlock.parent;
+            connected.add(newBlock);
+            newBlock = newBlock.parent;
+        }
+        for (int i=connected.size()-1;i>=0;i--) {
+            TreeBlock t = connected.get(i);
+            t.evicted = txPool.removeBlockTransactions(t.block);
         }
     }
 
@@ -175,7 +181,7 @@ public class BlockChain {
     /** Add a transaction to the transaction pool */
     public void addTransaction(Transaction tx) {
         // IMPLEMENT THIS
-        this.txPool.addTransaction(tx);
+        this.txPool.addTransaction(tx, getMaxHeightUTXOPool());
     }
 
     private void createFirstUTXOPool(Block genesisBlock) {
@@ -185,7 +191,7 @@ public class BlockChain {
         Transaction tx = genesisBlock.getCoinbase();
         List<Transaction.Output> outs = tx.getOutputs();
         for (Transaction.Output o : outs) {
-            UTXO utxo = new UTXO(tx.getHash(),0);
+            UTXO utxo = new UTXO(tx.getId(),0);
             utxoPool.addUTXO(utxo, o);
         }
         block2utxoMapping.put(genesisBlock,utxoPool);
@@ -1,14 +1,38 @@
 
 import java.security.PublicKey;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class BlockHandler {
+    /** number of blocks {@link #processBlocks(List)} verifies ahead of the one it is adding */
+    private static final int PIPELINE_DEPTH = 16;
+
+    /** most bytes of raw transactions, as {@link Transaction#getRawTxSize()} counts them, a created block takes */
+    public static final int MAX_BLOCK_SIZE = 1 << 20;
+
+    /** fewest bytes of raw transaction a transaction spending an output takes: its output index */
+    private static final int MIN_TX_SIZE = Integer.SIZE / 8;
+
     private BlockChain blockChain;
 
+    /** verifies signatures ahead in processBlocks, null to use a verifier of its own per call */
+    private SignatureVerifier verifier;
+
     /** assume blockChain has the genesis block */
     public BlockHandler(BlockChain blockChain) {
         this.blockChain = blockChain;
     }
 
+    /** same as {@link #BlockHandler(BlockChain)}, with {@code verifier} doing the background work of {@link #processBlocks(List)} */
+    public BlockHandler(BlockChain blockChain, SignatureVerifier verifier) {
+        this(blockChain);
+        this.verifier = verifier;
+    }
+
     /**
      * add {@code block} to the block chain if it is valid.
      * 
@@ -20,18 +44,114 @@ public class BlockHandler {
         return blockChain.addBlock(block);
     }
 
-    /** create a new {@code block} over the max height {@code block} */
+    /**
+     * add {@code blocks} to the block chain one by one, in order, as {@link #processBlock(Block)}
+     * would. While a block is being added, the input signatures of the next {@code PIPELINE_DEPTH}
+     * ones are verified on the worker threads of the signature verifier, so adding them later
+     * finds their signatures in the {@link VerifiedSignatureCache}. Outputs claimed by a block
+     * are looked up in the max height UTXO pool and among the outputs of all {@code blocks}.
+     * 
+     * @return an array whose i-th element tells whether {@code blocks.get(i)} was valid and added
+     */
+    public boolean[] processBlocks(List<Block> blocks) {
+        boolean[] added = new boolean[blocks.size()];
+        SignatureVerifier blockVerifier = verifier != null ? verifier : new SignatureVerifier();
+        try {
+            //the outputs any block of the batch may claim, only read while verifying
+            UTXOPool uPool = blockChain.getMaxHeightUTXOPool();
+            UTXOPool claimable = uPool != null ? new UTXOPool(uPool) : new UTXOPool();
+            for (Block block : blocks) {
+                if (block == null)
+                    continue;
+                addOutputs(block.getCoinbase(), claimable);
+                for (Transaction tx : block.getTransactions())
+                    addOutputs(tx, claimable);
+            }
+
+            List<Future<PublicKey[][]>> pending = new ArrayList<Future<PublicKey[][]>>();
+            for (int i = 0; i < blocks.size(); i++) {
+                //keep up to PIPELINE_DEPTH blocks verifying ahead of block i
+                while (pending.size() < blocks.size() && pending.size() <= i + PIPELINE_DEPTH) {
+                    Block next = blocks.get(pending.size());
+                    pending.add(next != null ? blockVerifier.submit(
+                            next.getTransactions().toArray(new Transaction[0]), claimable) : null);
+                }
+                awaitQuietly(pending.get(i));
+                pending.set(i, null);
+                added[i] = processBlock(blocks.get(i));
+            }
+        } finally {
+            if (blockVerifier != verifier)
+                blockVerifier.shutdown();
+        }
+        return added;
+    }
+
+    /**
+     * create a new {@code block} over the max height {@code block}, filled from the transaction
+     * pool up to {@link #MAX_BLOCK_SIZE} bytes of raw transactions
+     */
     public Block createBlock(PublicKey myAddress) {
+        return createBlock(myAddress, Integer.MAX_VALUE);
+    }
+
+    /**
+     * create a new {@code block} over the max height {@code block} with at most {@code maxTxs}
+     * transactions and {@link #MAX_BLOCK_SIZE} bytes of raw transactions, taken from the
+     * transaction pool highest fee rate first. A transaction that spends pooled ones waits until
+     * they are all in the block, then goes in right after the last of them, so the block lists
+     * parents before children. Each transaction taken is applied to the UTXO pool the next ones
+     * are validated against, as {@link TxHandler#handleTxs(Transaction[])} does when the block is
+     * added. The pool is walked lazily and only until the block is full. Pooled transactions found
+     * invalid on the way, and their pooled descendants, are dropped from the pool, so the next
+     * block does not check them again.
+     */
+    public Block createBlock(PublicKey myAddress, int maxTxs) {
         Block parent = blockChain.getMaxHeightBlock();
         byte[] parentHash = parent.getHash();
         Block current = new Block(parentHash, myAddress);
         UTXOPool uPool = blockChain.getMaxHeightUTXOPool();
         TransactionPool txPool = blockChain.getTransactionPool();
         TxHandler handler = new TxHandler(uPool);
-        Transaction[] txs = txPool.getTransactions().toArray(new Transaction[0]);
-        Transaction[] rTxs = handler.handleTxs(txs);
-        for (int i = 0; i < rTxs.length; i++)
-            current.addTransaction(rTxs[i]);
+        //the pooled transactions in the block, and those waiting for pooled parents to get there
+        HashSet<Hash256> included = new HashSet<Hash256>();
+        HashSet<Hash256> waiting = new HashSet<Hash256>();
+        ArrayList<Transaction> invalid = new ArrayList<Transaction>();
+        ArrayDeque<Transaction> ready = new ArrayDeque<Transaction>();
+        int blockSize = 0;
+        for (Transaction tx : txPool.getTransactionsByFeeRate()) {
+            if (current.getTransactions().size() >= maxTxs || MAX_BLOCK_SIZE - blockSize < MIN_TX_SIZE)
+                break;
+            if (!allIncluded(txPool.getParents(tx.getHash()), included)) {
+                waiting.add(tx.getId());
+                continue;
+            }
+            ready.add(tx);
+            while (!ready.isEmpty() && current.getTransactions().size() < maxTxs) {
+                Transaction next = ready.poll();
+                //YCM: the pool is sorted by fee rate, not size, so a smaller tx further down may still fit
+                int txSize = next.getRawTxSize();
+                if (txSize > MAX_BLOCK_SIZE - blockSize)
+                    continue;
+                //valid, and applied to the UTXO pool of the handler, at once
+                if (handler.handleTxs(new Transaction[] { next }).length == 0) {
+                    invalid.add(next);
+                    continue;
+                }
+                current.addTransaction(next);
+                blockSize += txSize;
+                included.add(next.getId());
+                for (Transaction child : txPool.getChildren(next.getHash())) {
+                    if (waiting.contains(child.getId()) && allIncluded(txPool.getParents(child.getHash()), included)) {
+                        waiting.remove(child.getId());
+                        ready.add(child);
+                    }
+                }
+            }
+            ready.clear();
+        }
+        //the pool is only changed once the walk over it is done
+        txPool.removeTransactionsAndDescendants(invalid);
 
         current.finalize();
         if (blockChain.addBlock(current))
@@ -44,4 +164,34 @@ public class BlockHandler {
     public void processTx(Transaction tx) {
         blockChain.addTransaction(tx);
     }
+
+    private static void addOutputs(Transaction tx, UTXOPool uPool) {
+        for (int i = 0; i < tx.numOutputs(); i++)
+            uPool.addUTXO(new UTXO(tx.getId(), i), tx.getOutput(i));
+    }
+
+    /**
+     * waits for a background verification; if it fails or is interrupted, adding the block just
+     * verifies its signatures itself
+     */
+    private static void awaitQuietly(Future<PublicKey[][]> verification) {
+        if (verification == null)
+            return;
+        try {
+            verification.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //the signatures are checked again by addBlock
+        }
+    }
+
+    /** @return true if all of {@code txs} are {@code included} */
+    private static boolean allIncluded(List<Transaction> txs, HashSet<Hash256> included) {
+        for (Transaction tx : txs) {
+            if (!included.contains(tx.getId()))
+                return false;
+        }
+        return true;
+    }
 }
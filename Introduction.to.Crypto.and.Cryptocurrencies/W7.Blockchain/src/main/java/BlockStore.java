@@ -0,0 +1,394 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An append-only store of blocks, kept outside the heap in fixed-size segments: files read and
+ * written through a {@link MappedByteBuffer} each, or direct buffers for a store that lives in
+ * memory only. A block is stored once, as
+ * <pre>
+ * int32   length of the rest of the record, written last
+ * varint  length of the block hash, then its bytes
+ * varint  length of the previous block hash plus one, 0 if it is null, then its bytes
+ *         the coinbase, then a varint count of the other transactions, each in the
+ *         {@link TransactionCodec} format
+ * </pre>
+ * and found again by its offset, which {@link #append(Block)} returns, or by its hash. The hash
+ * of a block does not cover its coinbase, so blocks with the same hash can be appended; the
+ * last one is found by that hash, the others by their offsets only. Only the
+ * hash-to-offset index and the offsets in append order are on the heap.
+ * <p>
+ * An offset holds the number of the segment in its high 32 bits and the position in the segment
+ * in its low ones. A block larger than a segment gets a segment of its own, just large enough.
+ * <p>
+ * Opening the store of a directory that already has segments reads the length and hash of each
+ * record to rebuild the index, and nothing else. A record whose length was not written yet ends
+ * its segment, so a block that was being appended when the process died is simply not there.
+ * Appended blocks are only sure to be on disk after {@link #flush()}.
+ * <p>
+ * Whole segments at the start of the store can be let go by {@link #discardBefore(long)}, which
+ * deletes their files, once the blocks in them are no longer needed. Whoever discards them keeps
+ * what it needs to restart without them in the store's checkpoint, see
+ * {@link #writeCheckpoint(byte[])}.
+ */
+public class BlockStore implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 24;
+
+    private static final String SEGMENT_NAME = "blocks-%05d.dat";
+    private static final String SEGMENT_GLOB = "blocks-*.dat";
+    private static final String CHECKPOINT_NAME = "checkpoint.dat";
+
+    /** where the segment files are, null if the segments are in memory */
+    private final Path directory;
+    /** size of a new segment, unless the block it is created for needs more */
+    private final int segmentSize;
+    /** the segments by number, null for those discarded */
+    private final ArrayList<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+    /** number of the first segment not discarded */
+    private int firstSegment;
+    private final HashMap<Hash256, Long> index = new HashMap<Hash256, Long>();
+    /** the offsets of the blocks, in the order they were appended */
+    private long[] offsets = new long[16];
+    private int size;
+    /** position in the last segment after its last record */
+    private int end;
+    /** the checkpoint of a store in memory, null if there is none */
+    private byte[] checkpoint;
+
+    /** Creates an empty store in memory, with segments of {@link #DEFAULT_SEGMENT_SIZE} bytes */
+    public BlockStore() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /** Creates an empty store in memory, with segments of {@code segmentSize} bytes */
+    public BlockStore(int segmentSize) {
+        this.directory = null;
+        this.segmentSize = segmentSize;
+    }
+
+    /** Opens the store of {@code directory} with segments of {@link #DEFAULT_SEGMENT_SIZE} bytes */
+    public BlockStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the store of {@code directory}, creating it if needed, with new segments of
+     * {@code segmentSize} bytes
+     */
+    public BlockStore(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        firstSegment = findFirstSegment();
+        for (int s = 0; s < firstSegment; s++)
+            segments.add(null);
+        for (int s = firstSegment; Files.exists(segmentPath(s)); s++) {
+            long fileSize = Files.size(segmentPath(s));
+            if (fileSize > Integer.MAX_VALUE)
+                throw new IOException(segmentPath(s) + " is too large for a segment");
+            ByteBuffer segment = map(segmentPath(s), Math.max(segmentSize, (int) fileSize));
+            segments.add(segment);
+            end = scan(segment, s);
+        }
+    }
+
+    /** @return the lowest number of a segment file in the directory, 0 if there is none */
+    private int findFirstSegment() throws IOException {
+        int first = Integer.MAX_VALUE;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_GLOB)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    first = Math.min(first, Integer.parseInt(name.substring(7, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    //not a segment of ours
+                }
+            }
+        }
+        return first == Integer.MAX_VALUE ? 0 : first;
+    }
+
+    private Path segmentPath(int s) {
+        return directory.resolve(String.format(SEGMENT_NAME, s));
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //the mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /** indexes the records of {@code segment}; @return the position after the last one */
+    private int scan(ByteBuffer segment, int s) throws IOException {
+        int pos = 0;
+        while (pos <= segment.capacity() - Integer.SIZE / 8) {
+            int length = segment.getInt(pos);
+            if (length == 0)
+                break;
+            if (length < 0 || length > segment.capacity() - pos - Integer.SIZE / 8)
+                throw new IOException("corrupt record at " + pos + " of " + segmentPath(s));
+            int hashStart = pos + Integer.SIZE / 8;
+            try {
+                long hashLength = TransactionCodec.getVarLong(segment, hashStart);
+                hashStart += Transaction.varLongSize(hashLength);
+                addIndex(Hash256.of(segment, hashStart, (int) hashLength), offset(s, pos));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IOException("corrupt record at " + pos + " of " + segmentPath(s), e);
+            }
+            pos += Integer.SIZE / 8 + length;
+        }
+        return pos;
+    }
+
+    private static long offset(int s, int pos) {
+        return (long) s << 32 | pos;
+    }
+
+    private void addIndex(Hash256 id, long offset) {
+        index.put(id, offset);
+        if (size == offsets.length)
+            offsets = Arrays.copyOf(offsets, size * 2);
+        offsets[size++] = offset;
+    }
+
+    /**
+     * Appends {@code block}.
+     *
+     * @return the offset of the stored block
+     * @throws IllegalArgumentException if {@code block} was not finalized
+     * @throws UncheckedIOException if a new segment file cannot be created
+     */
+    public synchronized long append(Block block) {
+        Hash256 id = block.getId();
+        if (id == null)
+            throw new IllegalArgumentException("only finalized blocks can be stored");
+        int length = recordSize(block);
+        if (segments.isEmpty() || length > segments.get(segments.size() - 1).capacity() - end - Integer.SIZE / 8) {
+            segments.add(newSegment(segments.size(), Math.max(segmentSize, Integer.SIZE / 8 + length)));
+            end = 0;
+        }
+        int s = segments.size() - 1;
+        ByteBuffer segment = segments.get(s);
+        ByteBuffer record = segment.duplicate();
+        record.position(end + Integer.SIZE / 8);
+        byte[] hash = block.getHash();
+        Transaction.putVarLong(record, hash.length);
+        record.put(hash);
+        byte[] prevBlockHash = block.getPrevBlockHash();
+        Transaction.putVarLong(record, prevBlockHash != null ? prevBlockHash.length + 1 : 0);
+        if (prevBlockHash != null)
+            record.put(prevBlockHash);
+        TransactionCodec.encode(block.getCoinbase(), record);
+        Transaction.putVarLong(record, block.getTransactions().size());
+        for (Transaction tx : block.getTransactions())
+            TransactionCodec.encode(tx, record);
+        //the record only counts once its length is there, so it is written last
+        segment.putInt(end, length);
+        long offset = offset(s, end);
+        end += Integer.SIZE / 8 + length;
+        addIndex(id, offset);
+        return offset;
+    }
+
+    private static int recordSize(Block block) {
+        int hashLength = block.getHash().length;
+        int size = Transaction.varLongSize(hashLength) + hashLength;
+        byte[] prevBlockHash = block.getPrevBlockHash();
+        size += prevBlockHash != null ? Transaction.varLongSize(prevBlockHash.length + 1) + prevBlockHash.length : 1;
+        size += TransactionCodec.encodedSize(block.getCoinbase());
+        size += Transaction.varLongSize(block.getTransactions().size());
+        for (Transaction tx : block.getTransactions())
+            size += TransactionCodec.encodedSize(tx);
+        return size;
+    }
+
+    private ByteBuffer newSegment(int s, int size) {
+        if (directory == null)
+            return ByteBuffer.allocateDirect(size);
+        try {
+            return map(segmentPath(s), size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the block stored at {@code offset}, decoded into new objects by every call
+     * @throws IllegalArgumentException if no block is stored there
+     */
+    public synchronized Block get(long offset) {
+        int s = (int) (offset >>> 32);
+        int pos = (int) offset;
+        if (s < firstSegment || s >= segments.size() || pos < 0
+                || pos >= (s == segments.size() - 1 ? end : segments.get(s).capacity()))
+            throw new IllegalArgumentException("no block is stored at offset " + offset);
+        ByteBuffer segment = segments.get(s);
+        ByteBuffer record = segment.duplicate();
+        record.limit(pos + Integer.SIZE / 8 + segment.getInt(pos));
+        record.position(pos + Integer.SIZE / 8);
+        byte[] hash = new byte[(int) Transaction.getVarLong(record)];
+        record.get(hash);
+        long prevBlockHashLength = Transaction.getVarLong(record);
+        byte[] prevBlockHash = null;
+        if (prevBlockHashLength > 0) {
+            prevBlockHash = new byte[(int) prevBlockHashLength - 1];
+            record.get(prevBlockHash);
+        }
+        Transaction coinbase = TransactionCodec.decode(record).toTransaction();
+        int numTxs = (int) Transaction.getVarLong(record);
+        ArrayList<Transaction> txs = new ArrayList<Transaction>(numTxs);
+        for (int i = 0; i < numTxs; i++)
+            txs.add(TransactionCodec.decode(record).toTransaction());
+        return new Block(prevBlockHash, hash, coinbase, txs);
+    }
+
+    /**
+     * @return the last block appended with hash {@code id}, decoded into new objects, or null if
+     *         there is none
+     */
+    public synchronized Block get(Hash256 id) {
+        Long offset = index.get(id);
+        return offset != null ? get(offset) : null;
+    }
+
+    /** @return the offset of the last block appended with hash {@code id}, or -1 if there is none */
+    public synchronized long getOffset(Hash256 id) {
+        Long offset = index.get(id);
+        return offset != null ? offset : -1;
+    }
+
+    /** @return the offset of the {@code i}-th block stored, in the order they were appended, the first being 0 */
+    public synchronized long getOffset(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("block " + i + " of " + size);
+        return offsets[i];
+    }
+
+    public synchronized boolean contains(Hash256 id) {
+        return index.containsKey(id);
+    }
+
+    /** @return the number of blocks stored */
+    public synchronized int size() {
+        return size;
+    }
+
+    /** @return true if the store is kept in files, and outlives the process */
+    public boolean isPersistent() {
+        return directory != null;
+    }
+
+    /**
+     * Lets go of the segments before the one {@code offset} is in, deleting their files, and of
+     * the blocks stored in them, which can no longer be found by offset or by hash.
+     *
+     * @throws UncheckedIOException if a segment file cannot be deleted
+     */
+    public synchronized void discardBefore(long offset) {
+        int s = Math.min((int) (offset >>> 32), segments.size() - 1);
+        if (s <= firstSegment)
+            return;
+        for (int i = firstSegment; i < s; i++) {
+            segments.set(i, null);
+            if (directory != null) {
+                try {
+                    Files.deleteIfExists(segmentPath(i));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        firstSegment = s;
+        long kept = offset(s, 0);
+        for (Iterator<Map.Entry<Hash256, Long>> it = index.entrySet().iterator(); it.hasNext();) {
+            if (it.next().getValue() < kept)
+                it.remove();
+        }
+        //offsets grow in append order, so the discarded ones are a prefix
+        int i = 0;
+        while (i < size && offsets[i] < kept)
+            i++;
+        System.arraycopy(offsets, i, offsets, 0, size - i);
+        size -= i;
+    }
+
+    /**
+     * Replaces the checkpoint of the store with {@code checkpoint}. In a directory it is written
+     * to a file of its own, and only takes the place of the old one once it is all on disk, so a
+     * crash leaves either checkpoint whole; the blocks appended so far are flushed first.
+     *
+     * @throws UncheckedIOException if the checkpoint cannot be written
+     */
+    public synchronized void writeCheckpoint(byte[] checkpoint) {
+        if (directory == null) {
+            this.checkpoint = checkpoint.clone();
+            return;
+        }
+        flush();
+        Path tmp = directory.resolve(CHECKPOINT_NAME + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer src = ByteBuffer.wrap(checkpoint);
+                while (src.hasRemaining())
+                    channel.write(src);
+                channel.force(true);
+            }
+            Files.move(tmp, directory.resolve(CHECKPOINT_NAME), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the last checkpoint written, or null if there is none
+     * @throws UncheckedIOException if it cannot be read
+     */
+    public synchronized byte[] readCheckpoint() {
+        if (directory == null)
+            return checkpoint != null ? checkpoint.clone() : null;
+        Path path = directory.resolve(CHECKPOINT_NAME);
+        try {
+            return Files.exists(path) ? Files.readAllBytes(path) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Writes the segments that are files to disk */
+    public synchronized void flush() {
+        if (directory == null)
+            return;
+        for (ByteBuffer segment : segments) {
+            if (segment != null)
+                ((MappedByteBuffer) segment).force();
+        }
+    }
+
+    /** Writes the store to disk; it must not be used afterwards */
+    @Override
+    public synchronized void close() {
+        flush();
+        segments.clear();
+        index.clear();
+        size = 0;
+        checkpoint = null;
+    }
+}
@@ -16,9 +16,10 @@ import java.util.ArrayList;
 
 
 
-
 import java.util.HashMap;
 
+import java.util.List;
+
 
 
 public class BlockChain {
@@ -27,7 +28,11 @@ public class BlockChain {
 
     private class BlockNode {
 
-        public Block b;
+        public Hash256 id;
+
+        // where the block is in the block store
+
+        public long offset;
 
         public BlockNode parent;
 
@@ -39,11 +44,17 @@ public class BlockChain {
 
         private UTXOPool uPool;
 
+        // pooled transactions that conflicted with this block when it joined the max height chain
+
+        private List<Transaction> evicted;
 
 
-        public BlockNode(Block b, BlockNode parent, UTXOPool uPool) {
 
-            this.b = b;
+        public BlockNode(Hash256 id, long offset, BlockNode parent, UTXOPool uPool) {
+
+            this.id = id;
+
+            this.offset = offset;
 
             this.parent = parent;
 
@@ -77,16 +88,42 @@ public class BlockChain {
 
 
 
-    private HashMap<ByteArrayWrapper, BlockNode> blockChain;
+    private HashMap<Hash256, BlockNode> blockChain;
+
+    //YCM: the nodes still in blockChain, grouped by height; levels.get(i) holds the nodes at height lowestHeight + i
+
+    private ArrayList<ArrayList<BlockNode>> levels;
+
+    private int lowestHeight;
 
     private BlockNode maxHeightNode;
 
+    //YCM: the block of maxHeightNode, the only one kept on the heap; all the others are read back from the store
+
+    private Block maxHeightBlock;
+
     private TransactionPool txPool;
 
+    private BlockStore store;
+
+    private Hash256 genesisId;
+
+    //YCM: lowestHeight when the store last let go of the blocks below the nodes kept
+
+    private int checkpointHeight;
+
 
 
     public static final int CUT_OFF_AGE = 10;
 
+    //YCM: the store lets go of old blocks, and is checkpointed, every time this many heights were pruned
+
+    private static final int CHECKPOINT_INTERVAL = CUT_OFF_AGE;
+
+    //YCM: small segments for a store in memory, so the pruned blocks are let go of soon
+
+    private static final int MEMORY_SEGMENT_SIZE = 1 << 20;
+
 
 
 
@@ -101,20 +138,192 @@ public class BlockChain {
 
     public BlockChain(Block genesisBlock) {
 
+        this(genesisBlock, new BlockStore(MEMORY_SEGMENT_SIZE));
+
+    }
+
+
+
+    /**
+
+     * Same as {@link #BlockChain(Block)}, keeping the added blocks in {@code store}. If
+
+     * {@code store} already holds the blocks of an earlier block chain on {@code genesisBlock},
+
+     * that block chain is restored: its blocks were all valid when they were added, so they are
+
+     * replayed in order without checking their transactions again. The transaction pool starts
+
+     * out empty.
+
+     * <p>
+
+     * Every {@code CUT_OFF_AGE} heights, the store lets go of the blocks below the nodes that are
+
+     * kept. A store that outlives the process is given a {@link ChainCheckpoint} of the lowest
+
+     * nodes first, and a restart only replays the blocks stored since, on top of them. A store in
+
+     * memory is not checkpointed, so it cannot be restored once it has let go of blocks.
+
+     *
+
+     * @throws IllegalArgumentException if {@code store} holds the blocks of another genesis block,
+
+     *         or no longer holds the first ones and has no checkpoint
+
+     */
+
+    public BlockChain(Block genesisBlock, BlockStore store) {
+
+        this.store = store;
+
         blockChain = new HashMap<>();
 
+        levels = new ArrayList<>();
+
+        txPool = new TransactionPool();
+
+        genesisId = genesisBlock.getId();
+
+        byte[] checkpoint = store.readCheckpoint();
+
+        if (checkpoint != null) {
+
+            restoreCheckpoint(ChainCheckpoint.decode(checkpoint));
+
+            return;
+
+        }
+
+        if (store.size() == 0)
+
+            store.append(genesisBlock);
+
+        else if (store.getOffset(genesisId) != store.getOffset(0))
+
+            throw new IllegalArgumentException("the store does not start with the genesis block");
+
         UTXOPool utxoPool = new UTXOPool();
 
         addCoinbaseToUTXOPool(genesisBlock, utxoPool);
 
-        BlockNode genesisNode = new BlockNode(genesisBlock, null, utxoPool);
+        BlockNode genesisNode = new BlockNode(genesisId, store.getOffset(0), null, utxoPool);
 
-        blockChain.put(wrap(genesisBlock.getHash()), genesisNode);
+        lowestHeight = genesisNode.height;
 
-        txPool = new TransactionPool();
+        checkpointHeight = lowestHeight;
+
+        addNode(genesisNode);
 
         maxHeightNode = genesisNode;
 
+        maxHeightBlock = genesisBlock;
+
+        for (int i = 1; i < store.size(); i++)
+
+            restoreBlock(store.getOffset(i));
+
+    }
+
+
+
+    /** restores the nodes of {@code checkpoint}, then replays the blocks stored from its offset on */
+
+    private void restoreCheckpoint(ChainCheckpoint checkpoint) {
+
+        if (!checkpoint.getGenesisId().equals(genesisId))
+
+            throw new IllegalArgumentException("the store holds the blocks of another genesis block");
+
+        lowestHeight = checkpoint.getHeight();
+
+        checkpointHeight = lowestHeight;
+
+        for (int i = 0; i < checkpoint.size(); i++) {
+
+            BlockNode node = new BlockNode(checkpoint.getId(i), checkpoint.getOffset(i), null, checkpoint.getUTXOPool(i));
+
+            node.height = lowestHeight;
+
+            node.evicted = new ArrayList<>();
+
+            addNode(node);
+
+            //YCM: the first block stored at a height is the one that became the max height block
+
+            if (maxHeightNode == null || node.offset < maxHeightNode.offset)
+
+                maxHeightNode = node;
+
+        }
+
+        maxHeightBlock = store.get(maxHeightNode.offset);
+
+        for (int i = 0; i < store.size(); i++) {
+
+            long offset = store.getOffset(i);
+
+            //YCM: the nodes of the checkpoint have no parent to be replayed on, so they are skipped too
+
+            if (offset >= checkpoint.getReplayFrom())
+
+                restoreBlock(offset);
+
+        }
+
+    }
+
+
+
+    /** replays the stored block at {@code offset} as {@link #addBlock(Block)} did when it was added */
+
+    private void restoreBlock(long offset) {
+
+        Block block = store.get(offset);
+
+        BlockNode parentBlockNode = blockChain.get(block.getPrevBlockId());
+
+        if (parentBlockNode == null) {
+
+            return;
+
+        }
+
+        UTXOPool utxoPool = parentBlockNode.getUTXOPoolCopy();
+
+        for (Transaction tx : block.getTransactions()) {
+
+            for (Transaction.Input in : tx.getInputs())
+
+                utxoPool.removeUTXO(new UTXO(in.getPrevTxId(), in.outputIndex));
+
+            for (int i = 0; i < tx.numOutputs(); i++)
+
+                utxoPool.addUTXO(new UTXO(tx.getId(), i), tx.getOutput(i));
+
+        }
+
+        addCoinbaseToUTXOPool(block, utxoPool);
+
+        BlockNode node = new BlockNode(block.getId(), offset, parentBlockNode, utxoPool);
+
+        //YCM: nothing was pooled, so nothing was evicted either
+
+        node.evicted = new ArrayList<>();
+
+        addNode(node);
+
+        if (node.height > maxHeightNode.height) {
+
+            maxHeightNode = node;
+
+            maxHeightBlock = block;
+
+            prune();
+
+        }
+
     }
 
 
@@ -127,7 +336,7 @@ public class BlockChain {
 
     public Block getMaxHeightBlock() {
 
-        return maxHeightNode.b;
+        return maxHeightBlock;
 
     }
 
@@ -179,6 +388,14 @@ public class BlockChain {
 
      * at height 2.
 
+     * <p>
+
+     * Blocks that can no longer be built on are pruned, so a block whose parent is too old is
+
+     * rejected by the parent lookup, before any of its transactions are looked at. A block that
+
+     * was not finalized is rejected as well, as it cannot be stored.
+
      *
 
      * @return true if block is successfully added
@@ -187,13 +404,13 @@ public class BlockChain {
 
     public boolean addBlock(Block block) {
 
-        byte[] prevBlockHash = block.getPrevBlockHash();
+        Hash256 prevBlockId = block.getPrevBlockId();
 
-        if (prevBlockHash == null)
+        if (prevBlockId == null || block.getId() == null)
 
             return false;
 
-        BlockNode parentBlockNode = blockChain.get(wrap(prevBlockHash));
+        BlockNode parentBlockNode = blockChain.get(prevBlockId);
 
         if (parentBlockNode == null) {
 
@@ -201,21 +418,23 @@ public class BlockChain {
 
         }
 
-        TxHandler handler = new TxHandler(parentBlockNode.getUTXOPoolCopy());
-
-        Transaction[] txs = block.getTransactions().toArray(new Transaction[0]);
+        //YCM: check the height first, it is much cheaper than validating the transactions
 
-        Transaction[] validTxs = handler.handleTxs(txs);
+        int proposedHeight = parentBlockNode.height + 1;
 
-        if (validTxs.length != txs.length) {
+        if (proposedHeight <= maxHeightNode.height - CUT_OFF_AGE) {
 
             return false;
 
         }
 
-        int proposedHeight = parentBlockNode.height + 1;
+        TxHandler handler = new TxHandler(parentBlockNode.getUTXOPoolCopy());
 
-        if (proposedHeight <= maxHeightNode.height - CUT_OFF_AGE) {
+        Transaction[] txs = block.getTransactions().toArray(new Transaction[0]);
+
+        Transaction[] validTxs = handler.handleTxs(txs);
+
+        if (validTxs.length != txs.length) {
 
             return false;
 
@@ -225,13 +444,19 @@ public class BlockChain {
 
         addCoinbaseToUTXOPool(block, utxoPool);
 
-        BlockNode node = new BlockNode(block, parentBlockNode, utxoPool);
+        BlockNode node = new BlockNode(block.getId(), store.append(block), parentBlockNode, utxoPool);
 
-        blockChain.put(wrap(block.getHash()), node);
+        addNode(node);
 
         if (proposedHeight > maxHeightNode.height) {
 
-            maxHeightNode = node;
+            switchMaxHeightNode(node, block);
+
+            prune();
+
+            if (lowestHeight >= checkpointHeight + CHECKPOINT_INTERVAL)
+
+                checkpoint();
 
         }
 
@@ -249,7 +474,7 @@ public class BlockChain {
 
     public void addTransaction(Transaction tx) {
 
-        txPool.addTransaction(tx);
+        txPool.addTransaction(tx, maxHeightNode.uPool);
 
     }
 
@@ -263,7 +488,7 @@ public class BlockChain {
 
             Transaction.Output out = coinbase.getOutput(i);
 
-            UTXO utxo = new UTXO(coinbase.getHash(), i);
+            UTXO utxo = new UTXO(coinbase.getId(), i);
 
             utxoPool.addUTXO(utxo, out);
 
@@ -273,9 +498,231 @@ public class BlockChain {
 
 
 
-    private static ByteArrayWrapper wrap(byte[] arr) {
+    /**
+
+     * Makes {@code node} the max height node and updates the transaction pool: the blocks of the
+
+     * branch that is left are undone newest first, putting their transactions back in the pool,
+
+     * then the blocks of the new branch remove theirs, oldest first. {@code block} is the block of
+
+     * {@code node}; the others are read back from the store.
+
+     */
+
+    private void switchMaxHeightNode(BlockNode node, Block block) {
+
+        BlockNode oldNode = maxHeightNode;
+
+        maxHeightNode = node;
+
+        maxHeightBlock = block;
+
+        ArrayList<BlockNode> connected = new ArrayList<>();
+
+        BlockNode newNode = node;
+
+        while (newNode != null && newNode.height > oldNode.height) {
+
+            connected.add(newNode);
+
+            newNode = newNode.parent;
+
+        }
+
+        //YCM: both branches are walked down to their common ancestor, or to the oldest nodes kept
+
+        while (newNode != oldNode && newNode != null && oldNode != null) {
+
+            txPool.restoreBlockTransactions(store.get(oldNode.offset), oldNode.evicted, oldNode.parent != null ? oldNode.parent.uPool : null);
+
+            oldNode.evicted = null;
+
+            oldNode = oldNode.parent;
+
+            connected.add(newNode);
+
+            newNode = newNode.parent;
+
+        }
+
+        for (int i = connected.size() - 1; i >= 0; i--) {
+
+            BlockNode connectedNode = connected.get(i);
+
+            Block connectedBlock = connectedNode == node ? block : store.get(connectedNode.offset);
+
+            connectedNode.evicted = txPool.removeBlockTransactions(connectedBlock);
+
+        }
+
+    }
+
+
+
+    private void addNode(BlockNode node) {
+
+        blockChain.put(node.id, node);
+
+        while (levels.size() <= node.height - lowestHeight)
+
+            levels.add(new ArrayList<BlockNode>());
+
+        levels.get(node.height - lowestHeight).add(node);
+
+    }
+
+
+
+    /**
+
+     * Drops the nodes below {@code maxHeight - CUT_OFF_AGE}. No valid block can have one of them
+
+     * as its parent any more, so their UTXO pools are released, and the links to them
+
+     * are cut so the nodes that are kept do not hold on to them either.
+
+     */
+
+    private void prune() {
+
+        while (lowestHeight < maxHeightNode.height - CUT_OFF_AGE) {
+
+            for (BlockNode node : levels.remove(0)) {
+
+                blockChain.remove(node.id);
+
+                for (BlockNode child : node.children)
+
+                    child.parent = null;
+
+                node.children.clear();
+
+                node.parent = null;
+
+                node.uPool = null;
+
+                node.evicted = null;
+
+            }
+
+            lowestHeight++;
+
+        }
+
+    }
+
+
+
+    /**
+
+     * Lets the store go of the segments below the blocks of the nodes that are kept. A store that
+
+     * outlives the process is given a checkpoint of the lowest nodes first, which takes time and
+
+     * space in the size of their UTXO pools.
+
+     */
+
+    private void checkpoint() {
+
+        long replayFrom = Long.MAX_VALUE;
+
+        for (ArrayList<BlockNode> level : levels) {
+
+            for (BlockNode node : level)
+
+                replayFrom = Math.min(replayFrom, node.offset);
+
+        }
+
+        if (store.isPersistent()) {
+
+            ArrayList<BlockNode> lowest = levels.get(0);
+
+            Hash256[] ids = new Hash256[lowest.size()];
+
+            long[] offsets = new long[lowest.size()];
+
+            UTXOPool[] pools = new UTXOPool[lowest.size()];
+
+            for (int i = 0; i < lowest.size(); i++) {
+
+                ids[i] = lowest.get(i).id;
+
+                offsets[i] = lowest.get(i).offset;
+
+                pools[i] = lowest.get(i).uPool;
+
+            }
+
+            store.writeCheckpoint(new ChainCheckpoint(genesisId, lowestHeight, replayFrom, ids, offsets, pools).encode());
+
+        }
+
+        store.discardBefore(replayFrom);
+
+        checkpointHeight = lowestHeight;
+
+    }
+
+
+
+    //for debugging purpose: prints the nodes that are kept, each one under its parent
+
+    public void printBlockChain() {
+
+        for (ArrayList<BlockNode> level : levels) {
+
+            for (BlockNode node : level) {
+
+                if (node.parent == null)
+
+                    printTree(node);
+
+            }
+
+        }
+
+    }
+
+
+
+    private void printTree(BlockNode node) {
+
+        StringBuilder line = new StringBuilder();
+
+        for (int i = lowestHeight; i < node.height; i++)
+
+            line.append("  ");
+
+        line.append("Block height ").append(node.height).append(" hash ").append(hexPrefix(node.id));
+
+        if (node == maxHeightNode)
+
+            line.append(" (max height)");
+
+        System.out.println(line);
+
+        for (BlockNode child : node.children)
+
+            printTree(child);
+
+    }
+
+
+
+    private static String hexPrefix(Hash256 id) {
+
+        byte[] hash = id.toByteArray();
+
+        StringBuilder hex = new StringBuilder();
+
+        for (int i = 0; i < Math.min(hash.length, 8); i++)
+
+            hex.append(String.format("%02x", hash[i]));
 
-        return new ByteArrayWrapper(arr);
+        return hex.toString();
 
     }
 
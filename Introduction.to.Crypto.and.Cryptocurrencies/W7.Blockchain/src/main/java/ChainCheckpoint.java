@@ -0,0 +1,206 @@
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * What a {@link BlockChain} needs to restart without the blocks it pruned: the nodes at its
+ * lowest height with their UTXO pools, and the offset from which the blocks it kept are in the
+ * {@link BlockStore}. It is encoded as
+ * <pre>
+ * varint  length of the genesis block hash, then its bytes
+ * varint  height of the nodes
+ * varint  offset of the first block to replay
+ * varint  number of nodes, then for each node:
+ *         varint  length of the block hash, then its bytes
+ *         varint  offset of the block
+ *         varint  number of UTXOs, then for each UTXO:
+ *                 varint  length of the transaction hash, then its bytes
+ *                 int32   output index
+ *                 varint  value
+ *                 varint  length of the public exponent of the address
+ *                 varint  length of its modulus
+ *                 bytes   public exponent, then modulus, as in {@link TransactionCodec}
+ * </pre>
+ */
+public final class ChainCheckpoint {
+
+    private final Hash256 genesisId;
+    private final int height;
+    private final long replayFrom;
+    private final Hash256[] ids;
+    private final long[] offsets;
+    private final UTXOPool[] pools;
+
+    /**
+     * @param ids the hashes of the blocks of the nodes at {@code height}
+     * @param offsets the offsets of those blocks in the store
+     * @param pools the UTXO pools of those nodes, which must not change afterwards
+     */
+    public ChainCheckpoint(Hash256 genesisId, int height, long replayFrom, Hash256[] ids, long[] offsets,
+                           UTXOPool[] pools) {
+        if (ids.length != offsets.length || ids.length != pools.length)
+            throw new IllegalArgumentException("a node needs a hash, an offset and a UTXO pool");
+        this.genesisId = genesisId;
+        this.height = height;
+        this.replayFrom = replayFrom;
+        this.ids = ids.clone();
+        this.offsets = offsets.clone();
+        this.pools = pools.clone();
+    }
+
+    public Hash256 getGenesisId() {
+        return genesisId;
+    }
+
+    /** @return the height of the nodes */
+    public int getHeight() {
+        return height;
+    }
+
+    /** @return the offset of the first block that is to be replayed on top of the nodes */
+    public long getReplayFrom() {
+        return replayFrom;
+    }
+
+    /** @return the number of nodes */
+    public int size() {
+        return ids.length;
+    }
+
+    public Hash256 getId(int i) {
+        return ids[i];
+    }
+
+    public long getOffset(int i) {
+        return offsets[i];
+    }
+
+    public UTXOPool getUTXOPool(int i) {
+        return pools[i];
+    }
+
+    /** @return a new array holding the encoding of this checkpoint */
+    public byte[] encode() {
+        int size = hashSize(genesisId) + Transaction.varLongSize(height) + Transaction.varLongSize(replayFrom)
+                + Transaction.varLongSize(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            size += hashSize(ids[i]) + Transaction.varLongSize(offsets[i]) + Transaction.varLongSize(pools[i].size());
+            for (UTXO utxo : pools[i].getAllUTXO()) {
+                Transaction.Output op = pools[i].getTxOutput(utxo);
+                int hashLength = utxo.getTxHash().length;
+                int addressLength = op.getAddressBytes().length;
+                int exponentLength = exponentLength(op);
+                size += Transaction.varLongSize(hashLength) + hashLength + Integer.SIZE / 8
+                        + Transaction.varLongSize(op.value) + Transaction.varLongSize(exponentLength)
+                        + Transaction.varLongSize(addressLength - exponentLength) + addressLength;
+            }
+        }
+        ByteBuffer dst = ByteBuffer.allocate(size);
+        putHash(dst, genesisId);
+        Transaction.putVarLong(dst, height);
+        Transaction.putVarLong(dst, replayFrom);
+        Transaction.putVarLong(dst, ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            putHash(dst, ids[i]);
+            Transaction.putVarLong(dst, offsets[i]);
+            Transaction.putVarLong(dst, pools[i].size());
+            for (UTXO utxo : pools[i].getAllUTXO()) {
+                Transaction.Output op = pools[i].getTxOutput(utxo);
+                byte[] hash = utxo.getTxHash();
+                Transaction.putVarLong(dst, hash.length);
+                dst.put(hash);
+                dst.putInt(utxo.getIndex());
+                byte[] address = op.getAddressBytes();
+                int exponentLength = exponentLength(op);
+                Transaction.putVarLong(dst, op.value);
+                Transaction.putVarLong(dst, exponentLength);
+                Transaction.putVarLong(dst, address.length - exponentLength);
+                dst.put(address);
+            }
+        }
+        return dst.array();
+    }
+
+    private static int hashSize(Hash256 id) {
+        int length = id.toByteArray().length;
+        return Transaction.varLongSize(length) + length;
+    }
+
+    private static void putHash(ByteBuffer dst, Hash256 id) {
+        byte[] hash = id.toByteArray();
+        Transaction.putVarLong(dst, hash.length);
+        dst.put(hash);
+    }
+
+    /** @return the length of the public exponent at the start of {@code op.getAddressBytes()} */
+    private static int exponentLength(Transaction.Output op) {
+        return ((RSAPublicKey) op.address).getPublicExponent().bitLength() / 8 + 1;
+    }
+
+    /**
+     * @return the checkpoint encoded in {@code encoded}
+     * @throws IllegalArgumentException if {@code encoded} is not the encoding of a checkpoint
+     */
+    public static ChainCheckpoint decode(byte[] encoded) {
+        ByteBuffer src = ByteBuffer.wrap(encoded);
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            //the UTXOs of the nodes mostly share their addresses, so each one is decoded once
+            HashMap<ByteBuffer, PublicKey> addresses = new HashMap<ByteBuffer, PublicKey>();
+            //an output does not use the transaction it belongs to, so they all share an empty one
+            Transaction outputs = new Transaction();
+            Hash256 genesisId = Hash256.of(getBytes(src));
+            int height = (int) Transaction.getVarLong(src);
+            long replayFrom = Transaction.getVarLong(src);
+            int numNodes = (int) Transaction.getVarLong(src);
+            Hash256[] ids = new Hash256[numNodes];
+            long[] offsets = new long[numNodes];
+            UTXOPool[] pools = new UTXOPool[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                ids[i] = Hash256.of(getBytes(src));
+                offsets[i] = Transaction.getVarLong(src);
+                pools[i] = new UTXOPool();
+                long numUTXOs = Transaction.getVarLong(src);
+                for (long j = 0; j < numUTXOs; j++) {
+                    UTXO utxo = new UTXO(getBytes(src), src.getInt());
+                    long value = Transaction.getVarLong(src);
+                    int exponentLength = (int) Transaction.getVarLong(src);
+                    int modulusLength = (int) Transaction.getVarLong(src);
+                    byte[] address = new byte[exponentLength + modulusLength];
+                    src.get(address);
+                    ByteBuffer key = ByteBuffer.wrap(address);
+                    PublicKey publicKey = addresses.get(key);
+                    if (publicKey == null) {
+                        BigInteger exponent = new BigInteger(Arrays.copyOfRange(address, 0, exponentLength));
+                        BigInteger modulus = new BigInteger(Arrays.copyOfRange(address, exponentLength, address.length));
+                        publicKey = keyFactory.generatePublic(new RSAPublicKeySpec(modulus, exponent));
+                        addresses.put(key, publicKey);
+                    }
+                    pools[i].addUTXO(utxo, outputs.new Output(value, publicKey));
+                }
+            }
+            if (src.hasRemaining())
+                throw new IllegalArgumentException("bytes left over after the checkpoint");
+            return new ChainCheckpoint(genesisId, height, replayFrom, ids, offsets, pools);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException
+                | NumberFormatException | InvalidKeySpecException e) {
+            throw new IllegalArgumentException("not the encoding of a checkpoint", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA is not available", e);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer src) {
+        byte[] bytes = new byte[(int) Transaction.getVarLong(src)];
+        src.get(bytes);
+        return bytes;
+    }
+}
@@ -1,11 +1,38 @@
 import java.security.InvalidKeyException;
+import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class Crypto {
 
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    private static final String KEY_ALGORITHM = "RSA";
+
+    /** maximum number of addresses whose provider-specific key form is kept */
+    private static final int KEY_CACHE_SIZE = 4096;
+
+    /** addresses seen recently, translated once into the key form the signature provider works on */
+    private static final Map<PublicKey, PublicKey> translatedKeys = Collections.synchronizedMap(
+            new LinkedHashMap<PublicKey, PublicKey>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<PublicKey, PublicKey> eldest) {
+                    return size() > KEY_CACHE_SIZE;
+                }
+            });
+
+    /** Signature lookup is expensive and a Signature is not thread-safe, so each thread keeps its own */
+    private static final ThreadLocal<Verifier> verifiers = new ThreadLocal<Verifier>() {
+        @Override
+        protected Verifier initialValue() {
+            return new Verifier();
+        }
+    };
+
     /**
      * @return true is {@code signature} is a valid digital signature of {@code message} under the
      *         key {@code pubKey}. Internally, this uses RSA signature, but the student does not
@@ -13,24 +40,53 @@ public class Crypto {
      *         algorithm
      */
     public static boolean verifySignature(PublicKey pubKey, byte[] message, byte[] signature) {
-        Signature sig = null;
-        try {
-            sig = Signature.getInstance("SHA256withRSA");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
-        try {
-            sig.initVerify(pubKey);
-        } catch (InvalidKeyException e) {
-            e.printStackTrace();
+        return verifiers.get().verify(pubKey, message, signature);
+    }
+
+    /** a thread's {@link Signature}, which stays initialized with the last key it verified against */
+    private static class Verifier {
+
+        private final Signature sig;
+        private final KeyFactory keyFactory;
+        /** the address {@code sig} is initialized with, or null if it has to be initialized again */
+        private PublicKey initializedKey;
+
+        Verifier() {
+            try {
+                sig = Signature.getInstance(SIGNATURE_ALGORITHM);
+                keyFactory = KeyFactory.getInstance(KEY_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(SIGNATURE_ALGORITHM + " is not available", e);
+            }
         }
-        try {
-            sig.update(message);
-            return sig.verify(signature);
-        } catch (SignatureException e) {
-            e.printStackTrace();
+
+        boolean verify(PublicKey pubKey, byte[] message, byte[] signature) {
+            if (pubKey == null || signature == null)
+                return false;
+            try {
+                //verify() resets sig to its initialized state, so the same address needs no new initVerify()
+                if (pubKey != initializedKey) {
+                    initializedKey = null;
+                    sig.initVerify(translate(pubKey));
+                    initializedKey = pubKey;
+                }
+                sig.update(message);
+                return sig.verify(signature);
+            } catch (InvalidKeyException | SignatureException e) {
+                //a malformed key or signature just makes the signature invalid, but leaves sig in an
+                //unknown state
+                initializedKey = null;
+                return false;
+            }
         }
-        return false;
 
+        private PublicKey translate(PublicKey pubKey) throws InvalidKeyException {
+            PublicKey translated = translatedKeys.get(pubKey);
+            if (translated == null) {
+                translated = (PublicKey) keyFactory.translateKey(pubKey);
+                translatedKeys.put(pubKey, translated);
+            }
+            return translated;
+        }
     }
 }
@@ -0,0 +1,127 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * An immutable hash, used as the key of blocks, transactions and UTXOs. A 32-byte hash, such as
+ * every SHA-256 hash of a block or a transaction, is held as four longs, so comparing two of them
+ * takes four primitive comparisons; its hash code is computed once, when it is created.
+ * <p>
+ * Inputs may claim outputs by hashes of any length, so a hash that is not 32 bytes long is kept
+ * as a copy of its bytes instead, and is only ever equal to a hash of the same bytes.
+ */
+public final class Hash256 implements Comparable<Hash256> {
+
+    public static final int SIZE = 32;
+
+    /** the bytes of a 32-byte hash, big-endian */
+    private final long w0, w1, w2, w3;
+    /** the bytes of a hash that is not 32 bytes long, or null */
+    private final byte[] irregular;
+    private final int hashCode;
+
+    private Hash256(long w0, long w1, long w2, long w3, byte[] irregular) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+        this.irregular = irregular;
+        if (irregular != null)
+            hashCode = Arrays.hashCode(irregular);
+        else
+            hashCode = Long.hashCode(w0 ^ 31 * (w1 ^ 31 * (w2 ^ 31 * w3)));
+    }
+
+    /** @return the hash with the bytes of {@code hash}, which is not kept */
+    public static Hash256 of(byte[] hash) {
+        if (hash.length != SIZE)
+            return new Hash256(0, 0, 0, 0, hash.clone());
+        return new Hash256(getLong(hash, 0), getLong(hash, 8), getLong(hash, 16), getLong(hash, 24), null);
+    }
+
+    /**
+     * @return the hash with the {@code length} bytes of {@code buf} at {@code index}, read without
+     *         changing its position or copying them, unless they are not 32
+     */
+    public static Hash256 of(ByteBuffer buf, int index, int length) {
+        if (length != SIZE) {
+            byte[] hash = new byte[length];
+            for (int i = 0; i < length; i++)
+                hash[i] = buf.get(index + i);
+            return new Hash256(0, 0, 0, 0, hash);
+        }
+        if (buf.order() != ByteOrder.BIG_ENDIAN)
+            buf = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+        return new Hash256(buf.getLong(index), buf.getLong(index + 8), buf.getLong(index + 16),
+                buf.getLong(index + 24), null);
+    }
+
+    private static long getLong(byte[] b, int off) {
+        long l = 0;
+        for (int i = off; i < off + 8; i++)
+            l = l << 8 | (b[i] & 0xff);
+        return l;
+    }
+
+    private static void putLong(byte[] b, int off, long l) {
+        for (int i = off + 7; i >= off; i--) {
+            b[i] = (byte) l;
+            l >>>= 8;
+        }
+    }
+
+    /** @return a new array of the bytes of this hash */
+    public byte[] toByteArray() {
+        if (irregular != null)
+            return irregular.clone();
+        byte[] b = new byte[SIZE];
+        putLong(b, 0, w0);
+        putLong(b, 8, w1);
+        putLong(b, 16, w2);
+        putLong(b, 24, w3);
+        return b;
+    }
+
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || getClass() != other.getClass())
+            return false;
+        Hash256 h = (Hash256) other;
+        if (hashCode != h.hashCode || w0 != h.w0 || w1 != h.w1 || w2 != h.w2 || w3 != h.w3)
+            return false;
+        return irregular == null ? h.irregular == null : Arrays.equals(irregular, h.irregular);
+    }
+
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * Orders hashes as {@link UTXO} always has: shorter hashes first, then byte by byte, comparing
+     * the bytes as signed values
+     */
+    public int compareTo(Hash256 other) {
+        int len1 = irregular != null ? irregular.length : SIZE;
+        int len2 = other.irregular != null ? other.irregular.length : SIZE;
+        if (len1 != len2)
+            return len1 < len2 ? -1 : 1;
+        if (irregular != null) {
+            for (int i = 0; i < len1; i++) {
+                if (irregular[i] != other.irregular[i])
+                    return irregular[i] < other.irregular[i] ? -1 : 1;
+            }
+            return 0;
+        }
+        //flipping the sign bit of every byte makes an unsigned comparison compare them as signed bytes
+        long flip = 0x8080808080808080L;
+        int c = Long.compareUnsigned(w0 ^ flip, other.w0 ^ flip);
+        if (c == 0)
+            c = Long.compareUnsigned(w1 ^ flip, other.w1 ^ flip);
+        if (c == 0)
+            c = Long.compareUnsigned(w2 ^ flip, other.w2 ^ flip);
+        if (c == 0)
+            c = Long.compareUnsigned(w3 ^ flip, other.w3 ^ flip);
+        return c;
+    }
+}
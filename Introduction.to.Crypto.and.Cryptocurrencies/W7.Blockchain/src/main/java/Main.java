@@ -50,9 +50,9 @@ public class Main {
         // the genesis block has a value of 25
         tx1.addInput(genesis.getCoinbase().getHash(), 0);
 
-        tx1.addOutput(5, pk_alice.getPublic());
-        tx1.addOutput(10, pk_alice.getPublic());
-        tx1.addOutput(10, pk_alice.getPublic());
+        tx1.addOutput(5 * Transaction.COIN, pk_alice.getPublic());
+        tx1.addOutput(10 * Transaction.COIN, pk_alice.getPublic());
+        tx1.addOutput(10 * Transaction.COIN, pk_alice.getPublic());
 
         // There is only one (at position 0) Transaction.Input in tx2
         // and it contains the coin from Scrooge, therefore I have to sign with the private key from Scrooge
@@ -71,9 +71,9 @@ public class Main {
         // new TX: scrooge pays 25 coins to scrooge
         Tx tx2 = new Tx();
         tx2.addInput(genesis.getCoinbase().getHash(), 0);  //25
-        tx2.addOutput(5, pk_scrooge.getPublic());
-        tx2.addOutput(10, pk_scrooge.getPublic());
-        tx2.addOutput(10, pk_scrooge.getPublic());
+        tx2.addOutput(5 * Transaction.COIN, pk_scrooge.getPublic());
+        tx2.addOutput(10 * Transaction.COIN, pk_scrooge.getPublic());
+        tx2.addOutput(10 * Transaction.COIN, pk_scrooge.getPublic());
         tx2.signTx(pk_scrooge.getPrivate(), 0);
 
         block2.addTransaction(tx2);
@@ -88,7 +88,7 @@ public class Main {
 
         // new TX: alice pays 15 coins to bob
         Tx tx3 = new Tx();
-        tx3.addOutput(20, pk_bob.getPublic());
+        tx3.addOutput(20 * Transaction.COIN, pk_bob.getPublic());
         tx3.addInput(tx1.getHash(), 1);	// 10 coins
         tx3.signTx(pk_alice.getPrivate(), 0);
         tx3.addInput(tx1.getHash(), 2);	// 10 coins
@@ -106,8 +106,8 @@ public class Main {
 
         // new TX: bob splits 15 coins to bob
         Tx tx4 = new Tx();
-        tx4.addOutput(10, pk_bob.getPublic());
-        tx4.addOutput(5, pk_bob.getPublic());
+        tx4.addOutput(10 * Transaction.COIN, pk_bob.getPublic());
+        tx4.addOutput(5 * Transaction.COIN, pk_bob.getPublic());
         tx4.addInput(tx3.getHash(), 0);	// 15 coins
         tx4.signTx(pk_bob.getPrivate(), 0);
 
@@ -123,7 +123,7 @@ public class Main {
 
         // new TX: alice pays 5+25 coins to bob
         Tx tx5 = new Tx();
-        tx5.addOutput(25, pk_bob.getPublic());
+        tx5.addOutput(25 * Transaction.COIN, pk_bob.getPublic());
         tx5.addInput(tx1.getHash(), 0);	// 5 coins
         tx5.signTx(pk_alice.getPrivate(), 0);
         tx5.addInput(block1.getCoinbase().getHash(), 0); // 25 coins
@@ -137,8 +137,8 @@ public class Main {
         Block block6 = new Block(block1.getHash(), pk_alice.getPublic());
         Tx tx6 = new Tx();
         tx6.addInput(genesis.getCoinbase().getHash(), 0);  //25
-        tx6.addOutput(15, pk_scrooge.getPublic());
-        tx6.addOutput(10, pk_bob.getPublic());
+        tx6.addOutput(15 * Transaction.COIN, pk_scrooge.getPublic());
+        tx6.addOutput(10 * Transaction.COIN, pk_bob.getPublic());
         tx6.signTx(pk_scrooge.getPrivate(), 0);
         block6.addTransaction(tx6);
         block6.finalize();
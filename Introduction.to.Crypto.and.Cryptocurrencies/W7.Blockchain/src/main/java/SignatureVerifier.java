@@ -0,0 +1,221 @@
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checks the input signatures of a whole epoch of transactions on a fork-join pool. Signature
+ * verification is by far the most expensive part of {@link TxHandler#handleTxs(Transaction[])},
+ * and unlike the UTXO and value checks it does not depend on the order the transactions are
+ * applied in, so it can be done up front across all cores.
+ */
+public class SignatureVerifier {
+
+    /** number of input signatures a single task verifies itself instead of splitting further */
+    private static final int BATCH_SIZE = 8;
+
+    private final ForkJoinPool forkJoinPool;
+
+    /** Creates a verifier with one worker thread per available processor */
+    public SignatureVerifier() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Creates a verifier with {@code parallelism} worker threads */
+    public SignatureVerifier(int parallelism) {
+        forkJoinPool = new ForkJoinPool(parallelism);
+    }
+
+    /** @return the number of worker threads of this verifier */
+    public int getParallelism() {
+        return forkJoinPool.getParallelism();
+    }
+
+    /** Stops the worker threads; the verifier must not be used afterwards */
+    public void shutdown() {
+        forkJoinPool.shutdown();
+    }
+
+    /**
+     * @return an array whose element [t][i] is the address the signature on input i of
+     *         {@code txs[t]} was found valid under, that of the output the input claims, or null.
+     *         Claimed outputs are looked up in {@code utxoPool} first and then among the outputs
+     *         of {@code txs} themselves, so transactions spending outputs created in the same
+     *         epoch are covered too. null means that the signature is invalid or the claimed
+     *         output could not be found. Several transactions may have the same hash, so the
+     *         caller may resolve another output than this did, and must only trust an address
+     *         that is the one it resolves; see {@link #isVerified(PublicKey[], int, PublicKey)}.
+     */
+    public PublicKey[][] verify(Transaction[] txs, UTXOPool utxoPool) {
+        return forkJoinPool.invoke(new EpochTask(txs, utxoPool));
+    }
+
+    /**
+     * Starts verifying the input signatures of {@code txs} like {@link #verify(Transaction[], UTXOPool)}
+     * does, but in the background. Signatures found valid are remembered in the
+     * {@link VerifiedSignatureCache#getDefault() default cache}, so checks made after the returned
+     * future completes find them there. {@code utxoPool} must not be modified until then.
+     */
+    public Future<PublicKey[][]> submit(Transaction[] txs, UTXOPool utxoPool) {
+        return forkJoinPool.submit(new EpochTask(txs, utxoPool));
+    }
+
+    /**
+     * @return true if {@code verifiedAddresses}, an element of what {@link #verify} returns or
+     *         null, says that the signature on input {@code index} is valid under {@code address}
+     */
+    public static boolean isVerified(PublicKey[] verifiedAddresses, int index, PublicKey address) {
+        if (verifiedAddresses == null)
+            return false;
+        PublicKey verified = verifiedAddresses[index];
+        return verified != null && (verified == address || verified.equals(address));
+    }
+
+    /**
+     * @return true if the signature on input {@code index} of {@code tx} is valid under
+     *         {@code address}. Signatures found valid are remembered in the
+     *         {@link VerifiedSignatureCache#getDefault() default cache}, so checking the same
+     *         transaction again, e.g. against another fork's UTXO pool, does not verify them again.
+     */
+    public static boolean verifyInput(Transaction tx, int index, PublicKey address) {
+        byte[] signature = tx.getInput(index).signature;
+        if (signature == null)
+            return false;
+        return verifySignature(address, tx.getRawDataToSign(index), signature);
+    }
+
+    /**
+     * Same as {@link #verifyInput(Transaction, int, PublicKey)}, on a decoded transaction that has
+     * not been turned into a {@link Transaction}; the cache is shared by both
+     */
+    public static boolean verifyInput(TransactionView tx, int index, PublicKey address) {
+        byte[] signature = tx.getSignature(index);
+        if (signature == null)
+            return false;
+        return verifySignature(address, tx.getRawDataToSign(index), signature);
+    }
+
+    /**
+     * @return true if {@code signature} of {@code msgToSign} is valid under {@code address},
+     *         looked up in the default cache first and remembered there if it is
+     */
+    private static boolean verifySignature(PublicKey address, byte[] msgToSign, byte[] signature) {
+        VerifiedSignatureCache cache = VerifiedSignatureCache.getDefault();
+        Hash256 key = VerifiedSignatureCache.key(msgToSign, signature, address);
+        if (cache.contains(key))
+            return true;
+        boolean valid = Crypto.verifySignature(address, msgToSign, signature);
+        if (valid)
+            cache.add(key);
+        return valid;
+    }
+
+    /**
+     * @return the output claimed by {@code input}, taken from {@code utxoPool} or from one of
+     *         {@code txsByHash}, or null if it is in neither
+     */
+    private static Transaction.Output resolve(Transaction.Input input, UTXOPool utxoPool,
+                                              Map<Hash256, Transaction> txsByHash) {
+        if (input.prevTxHash == null || input.outputIndex < 0)
+            return null;
+        Hash256 prevTxId = input.getPrevTxId();
+        Transaction.Output output = utxoPool.getTxOutput(new UTXO(prevTxId, input.outputIndex));
+        if (output != null)
+            return output;
+        Transaction prevTx = txsByHash.get(prevTxId);
+        if (prevTx == null)
+            return null;
+        return prevTx.getOutput(input.outputIndex);
+    }
+
+    /** verifies a whole epoch, splitting it into {@code VerifyTask}s of its inputs */
+    private static class EpochTask extends RecursiveTask<PublicKey[][]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Transaction[] txs;
+        private final UTXOPool utxoPool;
+
+        EpochTask(Transaction[] txs, UTXOPool utxoPool) {
+            this.txs = txs;
+            this.utxoPool = utxoPool;
+        }
+
+        @Override
+        protected PublicKey[][] compute() {
+            Map<Hash256, Transaction> txsByHash = new HashMap<Hash256, Transaction>();
+            int numInputs = 0;
+            for (Transaction tx : txs) {
+                txsByHash.put(tx.getId(), tx);
+                numInputs += tx.numInputs();
+            }
+
+            //flatten all inputs of the epoch, so that a transaction with many inputs is split too
+            int[] txOfInput = new int[numInputs];
+            int[] indexOfInput = new int[numInputs];
+            int k = 0;
+            for (int t = 0; t < txs.length; t++) {
+                for (int i = 0; i < txs[t].numInputs(); i++) {
+                    txOfInput[k] = t;
+                    indexOfInput[k] = i;
+                    k++;
+                }
+            }
+
+            PublicKey[] inputAddress = new PublicKey[numInputs];
+            new VerifyTask(txs, utxoPool, txsByHash, txOfInput, indexOfInput, inputAddress, 0, numInputs).invoke();
+
+            PublicKey[][] verifiedAddresses = new PublicKey[txs.length][];
+            for (int t = 0; t < txs.length; t++)
+                verifiedAddresses[t] = new PublicKey[txs[t].numInputs()];
+            for (k = 0; k < numInputs; k++)
+                verifiedAddresses[txOfInput[k]][indexOfInput[k]] = inputAddress[k];
+            return verifiedAddresses;
+        }
+    }
+
+    private static class VerifyTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Transaction[] txs;
+        private final UTXOPool utxoPool;
+        private final Map<Hash256, Transaction> txsByHash;
+        private final int[] txOfInput;
+        private final int[] indexOfInput;
+        private final PublicKey[] inputAddress;
+        private final int from, to;
+
+        VerifyTask(Transaction[] txs, UTXOPool utxoPool, Map<Hash256, Transaction> txsByHash,
+                   int[] txOfInput, int[] indexOfInput, PublicKey[] inputAddress, int from, int to) {
+            this.txs = txs;
+            this.utxoPool = utxoPool;
+            this.txsByHash = txsByHash;
+            this.txOfInput = txOfInput;
+            this.indexOfInput = indexOfInput;
+            this.inputAddress = inputAddress;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new VerifyTask(txs, utxoPool, txsByHash, txOfInput, indexOfInput, inputAddress, from, mid),
+                        new VerifyTask(txs, utxoPool, txsByHash, txOfInput, indexOfInput, inputAddress, mid, to));
+                return;
+            }
+            for (int k = from; k < to; k++) {
+                Transaction tx = txs[txOfInput[k]];
+                int index = indexOfInput[k];
+                Transaction.Output output = resolve(tx.getInput(index), utxoPool, txsByHash);
+                if (output != null && verifyInput(tx, index, output.address))
+                    inputAddress[k] = output.address;
+            }
+        }
+    }
+}
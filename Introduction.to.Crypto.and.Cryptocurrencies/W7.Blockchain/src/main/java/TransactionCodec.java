@@ -0,0 +1,252 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary wire format of transactions, which unlike {@link Transaction#getRawTx()} can be
+ * parsed back. A transaction is encoded as
+ * <pre>
+ * int32   length of the rest of the encoding
+ * byte    flags, bit 0 set for a coinbase transaction
+ * varint  number of inputs, then for each input:
+ *         varint  length of prevTxHash plus one, 0 if it is null
+ *         bytes   prevTxHash
+ *         int32   outputIndex
+ *         varint  length of the signature plus one, 0 if it is null
+ *         bytes   signature
+ * varint  number of outputs, then for each output:
+ *         varint  value
+ *         varint  length of the public exponent of the address
+ *         varint  length of its modulus
+ *         bytes   public exponent, then modulus, both as {@link java.math.BigInteger#toByteArray()}
+ * </pre>
+ * with every int32 big-endian and every varint written by {@link Transaction#putVarLong}. The
+ * fields {@link Transaction#getRawTx()} hashes are stored as the same bytes, so a decoded
+ * transaction is hashed straight from its encoding.
+ * <p>
+ * {@link #decode(ByteBuffer)} does not build a {@link Transaction}: it checks the encoding once
+ * and returns a {@link TransactionView} over it, which reads fields from the buffer when they are
+ * asked for.
+ */
+public final class TransactionCodec {
+
+    private static final int FLAG_COINBASE = 1;
+
+    private TransactionCodec() {
+    }
+
+    /** @return the number of bytes {@link #encode(Transaction, ByteBuffer)} writes for {@code tx} */
+    public static int encodedSize(Transaction tx) {
+        return Integer.SIZE / 8 + bodySize(tx);
+    }
+
+    private static int bodySize(Transaction tx) {
+        int size = 1 + Transaction.varLongSize(tx.numInputs());
+        for (Transaction.Input in : tx.getInputs()) {
+            size += lengthSize(in.prevTxHash) + Integer.SIZE / 8 + lengthSize(in.signature);
+        }
+        size += Transaction.varLongSize(tx.numOutputs());
+        for (Transaction.Output op : tx.getOutputs()) {
+            byte[] address = op.getAddressBytes();
+            int exponentLength = exponentLength(op);
+            size += Transaction.varLongSize(op.value) + Transaction.varLongSize(exponentLength)
+                    + Transaction.varLongSize(address.length - exponentLength) + address.length;
+        }
+        return size;
+    }
+
+    /** @return the number of bytes taken by {@code bytes} together with its length */
+    private static int lengthSize(byte[] bytes) {
+        if (bytes == null)
+            return 1;
+        return Transaction.varLongSize(bytes.length + 1) + bytes.length;
+    }
+
+    /** @return the length of the public exponent at the start of {@code op.getAddressBytes()} */
+    private static int exponentLength(Transaction.Output op) {
+        //toByteArray() of a BigInteger always takes bitLength() / 8 + 1 bytes
+        return ((RSAPublicKey) op.address).getPublicExponent().bitLength() / 8 + 1;
+    }
+
+    /** @return a new array holding the encoding of {@code tx} */
+    public static byte[] encode(Transaction tx) {
+        byte[] encoded = new byte[encodedSize(tx)];
+        encode(tx, ByteBuffer.wrap(encoded));
+        return encoded;
+    }
+
+    /**
+     * Writes the encoding of {@code tx} into {@code dst} at its current position, which must have
+     * {@link #encodedSize(Transaction)} bytes remaining.
+     *
+     * @throws IllegalArgumentException if {@code tx} is a coinbase transaction with inputs, or
+     *         with other than one output, which could not be decoded again
+     */
+    public static void encode(Transaction tx, ByteBuffer dst) {
+        if (tx.isCoinbase() && (tx.numInputs() != 0 || tx.numOutputs() != 1))
+            throw new IllegalArgumentException("a coinbase transaction must have no inputs and one output");
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.BIG_ENDIAN);
+        dst.putInt(bodySize(tx));
+        dst.put((byte) (tx.isCoinbase() ? FLAG_COINBASE : 0));
+        Transaction.putVarLong(dst, tx.numInputs());
+        for (Transaction.Input in : tx.getInputs()) {
+            putBytes(dst, in.prevTxHash);
+            dst.putInt(in.outputIndex);
+            putBytes(dst, in.signature);
+        }
+        Transaction.putVarLong(dst, tx.numOutputs());
+        for (Transaction.Output op : tx.getOutputs()) {
+            byte[] address = op.getAddressBytes();
+            int exponentLength = exponentLength(op);
+            Transaction.putVarLong(dst, op.value);
+            Transaction.putVarLong(dst, exponentLength);
+            Transaction.putVarLong(dst, address.length - exponentLength);
+            dst.put(address);
+        }
+        dst.order(order);
+    }
+
+    private static void putBytes(ByteBuffer dst, byte[] bytes) {
+        if (bytes == null) {
+            Transaction.putVarLong(dst, 0);
+        } else {
+            Transaction.putVarLong(dst, bytes.length + 1);
+            dst.put(bytes);
+        }
+    }
+
+    /**
+     * Decodes the transaction at the position of {@code src} and moves the position past it. The
+     * returned view shares the bytes of {@code src}, which must not be changed while it is in use.
+     *
+     * @throws IllegalArgumentException if there is no well-formed encoding at the position of
+     *         {@code src}, which is then left unchanged
+     */
+    public static TransactionView decode(ByteBuffer src) {
+        int start = src.position();
+        if (src.limit() - start < Integer.SIZE / 8)
+            throw malformed("truncated length");
+        ByteBuffer body = src.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int length = body.getInt(start);
+        if (length < 1 || length > src.limit() - start - Integer.SIZE / 8)
+            throw malformed("length " + length + " out of range");
+        body.limit(start + Integer.SIZE / 8 + length).position(start + Integer.SIZE / 8);
+        body = body.slice().order(ByteOrder.BIG_ENDIAN);
+
+        int flags = body.get(0);
+        if ((flags & ~FLAG_COINBASE) != 0)
+            throw malformed("unknown flags " + flags);
+        int pos = 1;
+
+        long numInputs = getVarLong(body, pos);
+        pos += Transaction.varLongSize(numInputs);
+        //every input takes at least six bytes, so a larger count cannot be right
+        if (numInputs < 0 || numInputs > (length - pos) / 6)
+            throw malformed("input count " + numInputs + " out of range");
+        int[] inputOffsets = new int[(int) numInputs];
+        for (int i = 0; i < inputOffsets.length; i++) {
+            inputOffsets[i] = pos;
+            pos = skipBytes(body, pos);
+            if (length - pos < Integer.SIZE / 8)
+                throw malformed("truncated output index");
+            pos = skipBytes(body, pos + Integer.SIZE / 8);
+        }
+
+        long numOutputs = getVarLong(body, pos);
+        pos += Transaction.varLongSize(numOutputs);
+        //every output takes at least five bytes
+        if (numOutputs < 0 || numOutputs > (length - pos) / 5)
+            throw malformed("output count " + numOutputs + " out of range");
+        int[] outputOffsets = new int[(int) numOutputs];
+        for (int i = 0; i < outputOffsets.length; i++) {
+            outputOffsets[i] = pos;
+            pos += Transaction.varLongSize(getVarLong(body, pos));
+            long exponentLength = getVarLong(body, pos);
+            pos += Transaction.varLongSize(exponentLength);
+            long modulusLength = getVarLong(body, pos);
+            pos += Transaction.varLongSize(modulusLength);
+            if (exponentLength < 1 || modulusLength < 1 || exponentLength + modulusLength > length - pos)
+                throw malformed("address length out of range");
+            //only the shortest form of a positive number is accepted, so that a decoded address is
+            //encoded, and hashed, to the very same bytes again
+            checkPositive(body, pos, (int) exponentLength);
+            pos += (int) exponentLength;
+            checkPositive(body, pos, (int) modulusLength);
+            pos += (int) modulusLength;
+        }
+
+        if (pos != length)
+            throw malformed((length - pos) + " bytes left over");
+        boolean coinbase = (flags & FLAG_COINBASE) != 0;
+        if (coinbase && (inputOffsets.length != 0 || outputOffsets.length != 1))
+            throw malformed("a coinbase transaction must have no inputs and one output");
+
+        src.position(start + Integer.SIZE / 8 + length);
+        return new TransactionView(body, coinbase, inputOffsets, outputOffsets);
+    }
+
+    /**
+     * Decodes the transactions from the position of {@code src} to its limit, and moves the
+     * position to the limit.
+     *
+     * @throws IllegalArgumentException if one of them is malformed; the position of {@code src}
+     *         is then left where it was
+     */
+    public static List<TransactionView> decodeAll(ByteBuffer src) {
+        int start = src.position();
+        List<TransactionView> views = new ArrayList<TransactionView>();
+        try {
+            while (src.hasRemaining())
+                views.add(decode(src));
+        } catch (IllegalArgumentException e) {
+            src.position(start);
+            throw e;
+        }
+        return views;
+    }
+
+    /** skips a length-prefixed, possibly null, byte array at {@code pos}; @return the position after it */
+    private static int skipBytes(ByteBuffer body, int pos) {
+        long length = getVarLong(body, pos);
+        pos += Transaction.varLongSize(length);
+        if (length < 0 || length - 1 > body.limit() - pos)
+            throw malformed("byte array length out of range");
+        return length == 0 ? pos : pos + (int) (length - 1);
+    }
+
+    private static void checkPositive(ByteBuffer body, int pos, int length) {
+        byte first = body.get(pos);
+        if (first < 0 || first == 0 && (length == 1 || body.get(pos + 1) >= 0))
+            throw malformed("address is not in its shortest positive form");
+    }
+
+    /**
+     * @return the value {@link Transaction#putVarLong} wrote at {@code index} of {@code buf}, read
+     *         without changing its position; it takes {@link Transaction#varLongSize(long)} bytes
+     * @throws IllegalArgumentException if it is truncated, or not written in as few bytes as it can be
+     */
+    static long getVarLong(ByteBuffer buf, int index) {
+        long v = 0;
+        for (int shift = 0, i = index; shift < Long.SIZE && i < buf.limit(); shift += 7, i++) {
+            byte b = buf.get(i);
+            //the tenth byte only holds the top bit
+            if (shift == 63 && (b & 0x7E) != 0)
+                throw malformed("variable-length integer longer than " + Long.SIZE + " bits");
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                long value = (v >>> 1) ^ -(v & 1);
+                if (Transaction.varLongSize(value) != i - index + 1)
+                    throw malformed("variable-length integer is longer than needed");
+                return value;
+            }
+        }
+        throw malformed("truncated variable-length integer");
+    }
+
+    private static IllegalArgumentException malformed(String reason) {
+        return new IllegalArgumentException("malformed transaction: " + reason);
+    }
+}
@@ -1,38 +1,340 @@
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
 
+/**
+ * The transactions waiting to be mined, indexed by hash and sorted by fee rate, the fee per byte
+ * of raw transaction. The pool also links each transaction to the pooled transactions whose
+ * outputs it spends, its parents, and to the pooled transactions that spend its outputs, its
+ * children.
+ * <p>
+ * A transaction added with a UTXO pool is only let in if it is valid on that pool together with
+ * the outputs of its pooled parents, so a transaction with a forged signature cannot take the
+ * place of the real spend of an output. Its fee is worked out from the outputs it claims there.
+ * A transaction added without a UTXO pool is not checked, and an output of neither counts as
+ * worth nothing in its fee.
+ * <p>
+ * Every output claimed by a pooled transaction is indexed to the transaction claiming it, so a
+ * transaction that double spends with a pooled one is turned away with one lookup per input.
+ */
 public class TransactionPool {
 
-    private HashMap<ByteArrayWrapper, Transaction> H;
+    private static final Comparator<Entry> BY_FEE_RATE = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            int c = Double.compare(b.feeRate, a.feeRate);
+            //YCM: of two transactions paying the same rate, the older one comes first
+            return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    /** a pooled transaction with its fee and its links to the other pooled transactions */
+    private static final class Entry {
+        final Transaction tx;
+        final long fee;
+        final double feeRate;
+        final long sequence;
+        final ArrayList<Entry> parents = new ArrayList<Entry>();
+        final ArrayList<Entry> children = new ArrayList<Entry>();
+
+        Entry(Transaction tx, long fee, long sequence) {
+            this.tx = tx;
+            this.fee = fee;
+            this.feeRate = (double) fee / Math.max(1, tx.getRawTxSize());
+            this.sequence = sequence;
+        }
+    }
+
+    private HashMap<Hash256, Entry> H;
+
+    /** the hash of the pooled transaction spending each UTXO claimed in the pool */
+    private HashMap<UTXO, Hash256> spenders;
+
+    /** all entries of {@code H}, highest fee rate first */
+    private TreeSet<Entry> byFeeRate;
+
+    /** sequence number of the next transaction added */
+    private long nextSequence;
 
     public TransactionPool() {
-        H = new HashMap<ByteArrayWrapper, Transaction>();
+        H = new HashMap<Hash256, Entry>();
+        spenders = new HashMap<UTXO, Hash256>();
+        byFeeRate = new TreeSet<Entry>(BY_FEE_RATE);
     }
 
     public TransactionPool(TransactionPool txPool) {
-        H = new HashMap<ByteArrayWrapper, Transaction>(txPool.H);
+        this();
+        nextSequence = txPool.nextSequence;
+        spenders.putAll(txPool.spenders);
+        for (Entry entry : txPool.H.values()) {
+            Entry copy = new Entry(entry.tx, entry.fee, entry.sequence);
+            H.put(entry.tx.getId(), copy);
+            byFeeRate.add(copy);
+        }
+        for (Entry entry : txPool.H.values()) {
+            Entry copy = H.get(entry.tx.getId());
+            for (Entry parent : entry.parents)
+                copy.parents.add(H.get(parent.tx.getId()));
+            for (Entry child : entry.children)
+                copy.children.add(H.get(child.tx.getId()));
+        }
+    }
+
+    /** same as {@link #addTransaction(Transaction, UTXOPool)} with no UTXO pool to price {@code tx} against */
+    public boolean addTransaction(Transaction tx) {
+        return addTransaction(tx, null);
     }
 
-    public void addTransaction(Transaction tx) {
-        ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
-        H.put(hash, tx);
+    /**
+     * Adds {@code tx} to the pool, working out its fee from the outputs it claims in
+     * {@code utxoPool}, which may be null, or of the pooled transactions it spends from
+     *
+     * @return false, leaving the pool as it is, if {@code tx} is in the pool already, claims an
+     *         output a pooled transaction claims, or is not valid on {@code utxoPool} and the
+     *         outputs of the pooled transactions it spends from
+     */
+    public boolean addTransaction(Transaction tx, UTXOPool utxoPool) {
+        Hash256 hash = tx.getId();
+        if (H.containsKey(hash))
+            return false;
+        ArrayList<Transaction.Input> inputs = tx.getInputs();
+        UTXO[] claims = new UTXO[inputs.size()];
+        for (int i = 0; i < claims.length; i++) {
+            claims[i] = new UTXO(inputs.get(i).getPrevTxId(), inputs.get(i).outputIndex);
+            if (spenders.containsKey(claims[i]))
+                return false;
+        }
+
+        ArrayList<Entry> parents = new ArrayList<Entry>();
+        Transaction.Output[] claimed = new Transaction.Output[claims.length];
+        for (int i = 0; i < claims.length; i++) {
+            Transaction.Input in = inputs.get(i);
+            claimed[i] = utxoPool != null ? utxoPool.getTxOutput(claims[i]) : null;
+            Entry parent = H.get(in.getPrevTxId());
+            if (parent != null) {
+                if (!parents.contains(parent))
+                    parents.add(parent);
+                if (claimed[i] == null && in.outputIndex >= 0 && in.outputIndex < parent.tx.numOutputs())
+                    claimed[i] = parent.tx.getOutput(in.outputIndex);
+            }
+        }
+        //YCM: checked before it is indexed, as the outputs it claims are refused to anyone else from then on
+        if (utxoPool != null && !isValid(tx, utxoPool, parents))
+            return false;
+        long fee = 0;
+        try {
+            for (Transaction.Output out : claimed) {
+                if (out != null)
+                    fee = Math.addExact(fee, out.value);
+            }
+            for (Transaction.Output out : tx.getOutputs())
+                fee = Math.subtractExact(fee, out.value);
+        } catch (ArithmeticException e) {
+            //YCM: a tx whose amounts overflow cannot be valid, so it goes last
+            fee = Long.MIN_VALUE;
+        }
+
+        Entry entry = new Entry(tx, fee, nextSequence++);
+        for (Entry parent : parents) {
+            entry.parents.add(parent);
+            parent.children.add(entry);
+        }
+        //YCM: children that arrived before tx are found through the outputs they claim
+        for (int i = 0; i < tx.numOutputs(); i++) {
+            Hash256 childHash = spenders.get(new UTXO(hash, i));
+            Entry child = childHash != null ? H.get(childHash) : null;
+            if (child != null && !entry.children.contains(child)) {
+                entry.children.add(child);
+                child.parents.add(entry);
+            }
+        }
+        for (UTXO claim : claims)
+            spenders.put(claim, hash);
+        H.put(hash, entry);
+        byFeeRate.add(entry);
+        return true;
+    }
+
+    /** @return true if {@code tx} is valid on {@code utxoPool} together with the outputs of {@code parents} */
+    private static boolean isValid(Transaction tx, UTXOPool utxoPool, List<Entry> parents) {
+        UTXOPool pool = utxoPool;
+        if (!parents.isEmpty()) {
+            pool = new UTXOPool(utxoPool);
+            for (Entry parent : parents) {
+                for (int i = 0; i < parent.tx.numOutputs(); i++)
+                    pool.addUTXO(new UTXO(parent.tx.getId(), i), parent.tx.getOutput(i));
+            }
+        }
+        return new TxHandler(pool).isValidTx(tx);
     }
 
     public void removeTransaction(byte[] txHash) {
-        ByteArrayWrapper hash = new ByteArrayWrapper(txHash);
-        H.remove(hash);
+        removeTransaction(Hash256.of(txHash));
+    }
+
+    private void removeTransaction(Hash256 hash) {
+        Entry entry = H.remove(hash);
+        if (entry == null)
+            return;
+        byFeeRate.remove(entry);
+        for (Transaction.Input in : entry.tx.getInputs())
+            spenders.remove(new UTXO(in.getPrevTxId(), in.outputIndex));
+        for (Entry parent : entry.parents)
+            parent.children.remove(entry);
+        for (Entry child : entry.children)
+            child.parents.remove(entry);
     }
 
     public Transaction getTransaction(byte[] txHash) {
-        ByteArrayWrapper hash = new ByteArrayWrapper(txHash);
-        return H.get(hash);
+        Hash256 hash = Hash256.of(txHash);
+        Entry entry = H.get(hash);
+        return entry != null ? entry.tx : null;
+    }
+
+    /** @return the pooled transaction that claims {@code utxo}, or null if none does */
+    public Transaction getSpender(UTXO utxo) {
+        Hash256 hash = spenders.get(utxo);
+        return hash != null ? H.get(hash).tx : null;
+    }
+
+    /** @return the fee {@code txHash} pays per byte, or NaN if it is not in the pool */
+    public double getFeeRate(byte[] txHash) {
+        Entry entry = H.get(Hash256.of(txHash));
+        return entry != null ? entry.feeRate : Double.NaN;
+    }
+
+    /** @return the pooled transactions whose outputs {@code txHash} spends */
+    public ArrayList<Transaction> getParents(byte[] txHash) {
+        Entry entry = H.get(Hash256.of(txHash));
+        return entry != null ? transactionsOf(entry.parents) : new ArrayList<Transaction>();
     }
 
+    /** @return the pooled transactions that spend outputs of {@code txHash} */
+    public ArrayList<Transaction> getChildren(byte[] txHash) {
+        Entry entry = H.get(Hash256.of(txHash));
+        return entry != null ? transactionsOf(entry.children) : new ArrayList<Transaction>();
+    }
+
+    /** @return the number of transactions in the pool */
+    public int size() {
+        return H.size();
+    }
+
+    /**
+     * Removes the transactions of {@code block} that are in the pool, every pooled transaction
+     * that spends an output one of the block's transactions spends, as it can no longer be mined
+     * on top of {@code block}, and the pooled descendants of those.
+     *
+     * @return the conflicting transactions and their descendants that were removed, not including
+     *         the block's own
+     */
+    public ArrayList<Transaction> removeBlockTransactions(Block block) {
+        for (Transaction tx : block.getTransactions())
+            removeTransaction(tx.getId());
+        ArrayList<Entry> conflicts = new ArrayList<Entry>();
+        HashSet<Entry> seen = new HashSet<Entry>();
+        for (Transaction tx : block.getTransactions()) {
+            for (Transaction.Input in : tx.getInputs()) {
+                Hash256 spender = spenders.get(new UTXO(in.getPrevTxId(), in.outputIndex));
+                Entry conflict = spender != null ? H.get(spender) : null;
+                if (conflict != null && seen.add(conflict))
+                    conflicts.add(conflict);
+            }
+        }
+        return removeWithDescendants(conflicts, seen);
+    }
+
+    /**
+     * Removes {@code txs} and their pooled descendants, which can only be mined after them, e.g.
+     * when {@code txs} turned out to be invalid on the max height block
+     *
+     * @return the transactions removed, those of {@code txs} that were pooled first
+     */
+    public ArrayList<Transaction> removeTransactionsAndDescendants(List<Transaction> txs) {
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+        HashSet<Entry> seen = new HashSet<Entry>();
+        for (Transaction tx : txs) {
+            Entry entry = H.get(tx.getId());
+            if (entry != null && seen.add(entry))
+                entries.add(entry);
+        }
+        return removeWithDescendants(entries, seen);
+    }
+
+    /** removes {@code entries}, all of them in {@code seen}, and their descendants; @return their transactions */
+    private ArrayList<Transaction> removeWithDescendants(ArrayList<Entry> entries, HashSet<Entry> seen) {
+        //YCM: entries grows while it is walked, picking up the children of each removed entry
+        for (int i = 0; i < entries.size(); i++) {
+            for (Entry child : entries.get(i).children) {
+                if (seen.add(child))
+                    entries.add(child);
+            }
+        }
+        ArrayList<Transaction> removed = transactionsOf(entries);
+        for (Transaction tx : removed)
+            removeTransaction(tx.getId());
+        return removed;
+    }
+
+    /**
+     * Puts back the transactions of a {@code block} that left the max height chain, together with
+     * the {@code conflicts} that {@link #removeBlockTransactions(Block)} removed for it, pricing
+     * them against {@code utxoPool}, the pool the block was built on. The block's transactions
+     * go first, so a conflict that double spends with one of them stays out.
+     */
+    public void restoreBlockTransactions(Block block, List<Transaction> conflicts, UTXOPool utxoPool) {
+        for (Transaction tx : block.getTransactions())
+            addTransaction(tx, utxoPool);
+        for (Transaction tx : conflicts)
+            addTransaction(tx, utxoPool);
+    }
+
+    /**
+     * @return a read-only view of the pooled transactions, highest fee rate first; it is walked
+     *         lazily, so taking the first few costs nothing for the rest of the pool
+     */
+    public Iterable<Transaction> getTransactionsByFeeRate() {
+        return new Iterable<Transaction>() {
+            @Override
+            public Iterator<Transaction> iterator() {
+                final Iterator<Entry> entries = byFeeRate.iterator();
+                return new Iterator<Transaction>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Transaction next() {
+                        return entries.next().tx;
+                    }
+                };
+            }
+        };
+    }
+
+    /** @return the (at most) {@code n} pooled transactions with the highest fee rates, highest first */
+    public ArrayList<Transaction> getTopTransactions(int n) {
+        ArrayList<Transaction> T = new ArrayList<Transaction>(Math.min(n, H.size()));
+        for (Iterator<Entry> it = byFeeRate.iterator(); it.hasNext() && T.size() < n;)
+            T.add(it.next().tx);
+        return T;
+    }
+
+    /** @return all pooled transactions, highest fee rate first */
     public ArrayList<Transaction> getTransactions() {
-        ArrayList<Transaction> T = new ArrayList<Transaction>();
-        for (Transaction tx : H.values())
-            T.add(tx);
+        return getTopTransactions(H.size());
+    }
+
+    private static ArrayList<Transaction> transactionsOf(List<Entry> entries) {
+        ArrayList<Transaction> T = new ArrayList<Transaction>(entries.size());
+        for (Entry entry : entries)
+            T.add(entry.tx);
         return T;
     }
 }
@@ -0,0 +1,277 @@
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.RSAPublicKeySpec;
+
+/**
+ * A read-only transaction over its {@link TransactionCodec encoding}, as returned by
+ * {@link TransactionCodec#decode(ByteBuffer)}. Apart from the offset of each input and output,
+ * nothing is copied out of the encoding until it is asked for: hashes and signatures are read
+ * when needed, and an address is only turned into a {@link PublicKey} by
+ * {@link #getAddress(int)}. The hash is computed straight from the encoding, so a batch of
+ * transactions can be checked, and those that fail dropped, without building a
+ * {@link Transaction} for any of them.
+ * <p>
+ * A view never changes, and can be used from several threads at once, as long as nothing writes
+ * to the buffer it was decoded from.
+ */
+public final class TransactionView {
+
+    /** a decoded address only needs a key factory of its own, so each thread keeps one to reuse */
+    private static final ThreadLocal<KeyFactory> keyFactories = new ThreadLocal<KeyFactory>() {
+        @Override
+        protected KeyFactory initialValue() {
+            try {
+                return KeyFactory.getInstance("RSA");
+            } catch (NoSuchAlgorithmException x) {
+                throw new IllegalStateException("RSA is not available", x);
+            }
+        }
+    };
+
+    private static final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException x) {
+                throw new IllegalStateException("SHA-256 is not available", x);
+            }
+        }
+    };
+
+    /** the encoding without its length, big-endian, from index 0 to its limit */
+    private final ByteBuffer body;
+    private final boolean coinbase;
+    /** index in {@code body} of the first byte of each input, and of each output */
+    private final int[] inputOffsets, outputOffsets;
+    /** hash of the transaction, computed when first asked for */
+    private volatile Hash256 id;
+
+    TransactionView(ByteBuffer body, boolean coinbase, int[] inputOffsets, int[] outputOffsets) {
+        this.body = body;
+        this.coinbase = coinbase;
+        this.inputOffsets = inputOffsets;
+        this.outputOffsets = outputOffsets;
+    }
+
+    public boolean isCoinbase() {
+        return coinbase;
+    }
+
+    public int numInputs() {
+        return inputOffsets.length;
+    }
+
+    public int numOutputs() {
+        return outputOffsets.length;
+    }
+
+    /** @return the varint at index {@code pos} of the encoding */
+    private long getVarLong(int pos) {
+        return TransactionCodec.getVarLong(body, pos);
+    }
+
+    /** @return the index of the previous transaction hash of input {@code index}, whose length is before it */
+    private int prevTxHashStart(int index) {
+        int pos = inputOffsets[index];
+        return pos + Transaction.varLongSize(getVarLong(pos));
+    }
+
+    /** @return the length of the previous transaction hash of input {@code index}, -1 if it is null */
+    private int prevTxHashLength(int index) {
+        return (int) getVarLong(inputOffsets[index]) - 1;
+    }
+
+    /** @return the index of the length of the signature of input {@code index} */
+    private int signatureOffset(int index) {
+        return prevTxHashStart(index) + Math.max(prevTxHashLength(index), 0) + Integer.SIZE / 8;
+    }
+
+    /** @return the hash of the transaction whose output input {@code index} claims, or null if it is null */
+    public Hash256 getPrevTxId(int index) {
+        int length = prevTxHashLength(index);
+        if (length < 0)
+            return null;
+        return Hash256.of(body, prevTxHashStart(index), length);
+    }
+
+    /** @return a copy of the hash of the transaction whose output input {@code index} claims, or null */
+    public byte[] getPrevTxHash(int index) {
+        return copy(prevTxHashStart(index), prevTxHashLength(index));
+    }
+
+    /** @return the index of the output input {@code index} claims in its transaction */
+    public int getOutputIndex(int index) {
+        return body.getInt(prevTxHashStart(index) + Math.max(prevTxHashLength(index), 0));
+    }
+
+    /** @return a copy of the signature of input {@code index}, or null if it has none */
+    public byte[] getSignature(int index) {
+        int pos = signatureOffset(index);
+        long length = getVarLong(pos);
+        return copy(pos + Transaction.varLongSize(length), (int) length - 1);
+    }
+
+    /** @return a copy of the {@code length} bytes at {@code pos}, or null if {@code length} is -1 */
+    private byte[] copy(int pos, int length) {
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        ByteBuffer b = body.duplicate();
+        b.position(pos);
+        b.get(bytes);
+        return bytes;
+    }
+
+    /** @return the value of output {@code index}, in base units */
+    public long getValue(int index) {
+        return getVarLong(outputOffsets[index]);
+    }
+
+    /**
+     * @return the address of output {@code index}, decoded anew by every call
+     * @throws IllegalArgumentException if its exponent and modulus are not an RSA public key
+     */
+    public PublicKey getAddress(int index) {
+        int pos = outputOffsets[index];
+        pos += Transaction.varLongSize(getVarLong(pos));
+        int exponentLength = (int) getVarLong(pos);
+        pos += Transaction.varLongSize(exponentLength);
+        int modulusLength = (int) getVarLong(pos);
+        pos += Transaction.varLongSize(modulusLength);
+        BigInteger exponent = new BigInteger(copy(pos, exponentLength));
+        BigInteger modulus = new BigInteger(copy(pos + exponentLength, modulusLength));
+        try {
+            return keyFactories.get().generatePublic(new RSAPublicKeySpec(modulus, exponent));
+        } catch (InvalidKeySpecException e) {
+            throw new IllegalArgumentException("output " + index + " has no valid address", e);
+        }
+    }
+
+    /**
+     * Feeds the value and the address of output {@code index} to {@code md}, as
+     * {@link Transaction#getRawTx()} lays them out, through {@code b}, a duplicate of {@code body}
+     */
+    private void updateOutput(MessageDigest md, ByteBuffer b, int index) {
+        int pos = outputOffsets[index];
+        int valueLength = Transaction.varLongSize(getVarLong(pos));
+        update(md, b, pos, valueLength);
+        pos += valueLength;
+        long exponentLength = getVarLong(pos);
+        pos += Transaction.varLongSize(exponentLength);
+        long modulusLength = getVarLong(pos);
+        pos += Transaction.varLongSize(modulusLength);
+        update(md, b, pos, (int) (exponentLength + modulusLength));
+    }
+
+    private static void update(MessageDigest md, ByteBuffer b, int pos, int length) {
+        b.limit(pos + length);
+        b.position(pos);
+        md.update(b);
+    }
+
+    /** @return the hash of the transaction, the same as {@link Transaction#getId()} of {@link #toTransaction()} */
+    public Hash256 getId() {
+        Hash256 h = id;
+        if (h == null) {
+            MessageDigest md = digests.get();
+            ByteBuffer b = body.duplicate();
+            for (int i = 0; i < inputOffsets.length; i++) {
+                //the previous transaction hash and the output index follow each other, as in getRawTx()
+                update(md, b, prevTxHashStart(i), Math.max(prevTxHashLength(i), 0) + Integer.SIZE / 8);
+                int pos = signatureOffset(i);
+                long length = getVarLong(pos);
+                if (length > 0)
+                    update(md, b, pos + Transaction.varLongSize(length), (int) length - 1);
+            }
+            for (int i = 0; i < outputOffsets.length; i++)
+                updateOutput(md, b, i);
+            h = Hash256.of(md.digest());
+            id = h;
+        }
+        return h;
+    }
+
+    /** @return a copy of the hash of the transaction, see {@link #getId()} */
+    public byte[] getHash() {
+        return getId().toByteArray();
+    }
+
+    /** @return the data the signature of input {@code index} signs, as {@link Transaction#getRawDataToSign(int)} */
+    public byte[] getRawDataToSign(int index) {
+        int hashStart = prevTxHashStart(index);
+        int hashAndIndexLength = Math.max(prevTxHashLength(index), 0) + Integer.SIZE / 8;
+        int size = hashAndIndexLength;
+        for (int i = 0; i < outputOffsets.length; i++) {
+            int pos = outputOffsets[i];
+            int valueLength = Transaction.varLongSize(getVarLong(pos));
+            long exponentLength = getVarLong(pos + valueLength);
+            long modulusLength = getVarLong(pos + valueLength + Transaction.varLongSize(exponentLength));
+            size += valueLength + (int) (exponentLength + modulusLength);
+        }
+        byte[] data = new byte[size];
+        ByteBuffer b = body.duplicate();
+        b.position(hashStart);
+        b.get(data, 0, hashAndIndexLength);
+        int k = hashAndIndexLength;
+        for (int i = 0; i < outputOffsets.length; i++) {
+            int pos = outputOffsets[i];
+            int valueLength = Transaction.varLongSize(getVarLong(pos));
+            b.position(pos);
+            b.get(data, k, valueLength);
+            k += valueLength;
+            pos += valueLength;
+            long exponentLength = getVarLong(pos);
+            pos += Transaction.varLongSize(exponentLength);
+            long modulusLength = getVarLong(pos);
+            pos += Transaction.varLongSize(modulusLength);
+            b.position(pos);
+            b.get(data, k, (int) (exponentLength + modulusLength));
+            k += (int) (exponentLength + modulusLength);
+        }
+        return data;
+    }
+
+    /** @return the number of bytes {@link #writeTo(ByteBuffer)} writes */
+    public int encodedSize() {
+        return Integer.SIZE / 8 + body.limit();
+    }
+
+    /**
+     * Writes the encoding this view was decoded from into {@code dst} at its current position,
+     * which must have {@link #encodedSize()} bytes remaining
+     */
+    public void writeTo(ByteBuffer dst) {
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.BIG_ENDIAN);
+        dst.putInt(body.limit());
+        dst.order(order);
+        dst.put(body.duplicate());
+    }
+
+    /**
+     * @return a new {@link Transaction} with the inputs and outputs of this view, which already
+     *         knows its hash if this view does
+     */
+    public Transaction toTransaction() {
+        if (coinbase)
+            return new Transaction(getValue(0), getAddress(0));
+        Transaction tx = new Transaction();
+        for (int i = 0; i < inputOffsets.length; i++) {
+            tx.addInput(getPrevTxHash(i), getOutputIndex(i));
+            tx.getInput(i).signature = getSignature(i);
+        }
+        for (int i = 0; i < outputOffsets.length; i++)
+            tx.addOutput(getValue(i), getAddress(i));
+        Hash256 h = id;
+        if (h != null)
+            tx.setHash(h.toByteArray());
+        return tx;
+    }
+}
@@ -1,5 +1,6 @@
 import javax.swing.tree.TreeNode;
 import java.util.ArrayList;
+import java.security.PublicKey;
 import java.util.Arrays;
 
 //YCM: =========================================================
@@ -9,6 +10,9 @@ public class TxHandler {
 
     private UTXOPool poolForValidityCheck, poolOriginal;
 
+    /** checks the signatures of each epoch in parallel, null to check them one by one */
+    private SignatureVerifier verifier;
+
     /**
      * Creates a public ledger whose current UTXOPool (collection of unspent transaction outputs) is
      * {@code utxoPool}. This should make a copy of utxoPool by using the UTXOPool(UTXOPool uPool)
@@ -20,6 +24,15 @@ public class TxHandler {
         poolForValidityCheck = new UTXOPool(utxoPool);
     }
 
+    /**
+     * Same as {@link #TxHandler(UTXOPool)}, except that {@link #handleTxs(Transaction[])} checks
+     * the signatures of the whole epoch up front on the worker threads of {@code verifier}.
+     */
+    public TxHandler(UTXOPool utxoPool, SignatureVerifier verifier) {
+        this(utxoPool);
+        this.verifier = verifier;
+    }
+
     public void printTx(Transaction tx) {
         System.out.println("### Transaction (Hash: "+tx.hashCode()+") :");
         ArrayList<Transaction.Input> inputs = tx.getInputs();
@@ -45,6 +58,57 @@ public class TxHandler {
      */
     public boolean isValidTx(Transaction tx) {
         // IMPLEMENT THIS
+        return isValidTx(tx, null);
+    }
+
+    /**
+     * Same as {@link #isValidTx(Transaction)}, on a decoded transaction that has not been turned
+     * into a {@link Transaction}. Only the addresses of the claimed outputs are decoded, from the
+     * pool; those of {@code tx} itself are never turned into keys.
+     */
+    public boolean isValidTx(TransactionView tx) {
+        UTXO[] claims = new UTXO[tx.numInputs()];
+        long totalInputValue = 0, totalOutputValue = 0;
+        try {
+            for (int i = 0; i < claims.length; i++) {
+                Hash256 prevTxId = tx.getPrevTxId(i);
+                if (prevTxId == null)
+                    return false;
+                claims[i] = new UTXO(prevTxId, tx.getOutputIndex(i));
+                //(1)
+                Transaction.Output output = poolForValidityCheck.getTxOutput(claims[i]);
+                if (output == null)
+                    return false;
+                //(2)
+                if (!SignatureVerifier.verifyInput(tx, i, output.address))
+                    return false;
+                //(3)
+                for (int j = 0; j < i; j++) {
+                    if (claims[j].equals(claims[i]))
+                        return false;
+                }
+                //(5)
+                totalInputValue = Math.addExact(totalInputValue, output.value);
+            }
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                long value = tx.getValue(i);
+                //(4)
+                if (value < 0)
+                    return false;
+                //(5)
+                totalOutputValue = Math.addExact(totalOutputValue, value);
+            }
+        } catch (ArithmeticException e) {
+            return false;
+        }
+        return totalInputValue >= totalOutputValue;
+    }
+
+    /**
+     * same as {@link #isValidTx(Transaction)}, but skips (2) for input i if {@code verifiedAddresses[i]}
+     * is the address of the output it claims, which its signature was already found valid under
+     */
+    private boolean isValidTx(Transaction tx, PublicKey[] verifiedAddresses) {
 
         //System.out.println("isValidTx()...");
         //printTx(tx);
@@ -52,7 +116,8 @@ public class TxHandler {
         ArrayList<Transaction.Input> inputs = tx.getInputs();
         ArrayList<Transaction.Output> outputs = tx.getOutputs();
 
-        double totalInputValue = 0.0, totalOutputValue = 0.0;
+        //amounts are whole base units, so the sums are exact; one that overflows is invalid
+        long totalInputValue = 0, totalOutputValue = 0;
 
         for (int i=0; i<inputs.size(); i++) {
 
@@ -61,7 +126,7 @@ public class TxHandler {
 
             //(1)
             //we assume the input is unspent, so we try to construct a UTXO obj out of it
-            UTXO u = new UTXO(input.prevTxHash, input.outputIndex);
+            UTXO u = new UTXO(input.getPrevTxId(), input.outputIndex);
             //we try to look it up in the pool. by right it should be there, because the input should be unspent
             if (!poolForValidityCheck.contains(u)) {
                 //System.out.println("pool has no utxo, invalid!");
@@ -78,11 +143,15 @@ public class TxHandler {
 
                 //(2)
                 //i assume we use data from getRawDataToSign() to sign
-                byte[] msgToSign = tx.getRawDataToSign(i);
-                boolean verifyResult = Crypto.verifySignature(output.address, msgToSign, input.signature);
-                if (!verifyResult) {
-                    //System.out.println("sign verify false, invalid!");
-                    return false;
+                //handleTxs may already have verified all signatures of this tx in parallel, but only
+                //against the output it resolved then; another output with the same hash may be here.
+                //signatures verified by an earlier TxHandler are cached
+                if (!SignatureVerifier.isVerified(verifiedAddresses, i, output.address)) {
+                    boolean verifyResult = SignatureVerifier.verifyInput(tx, i, output.address);
+                    if (!verifyResult) {
+                        //System.out.println("sign verify false, invalid!");
+                        return false;
+                    }
                 }
 
                 //(3)
@@ -105,7 +174,11 @@ public class TxHandler {
 //                }
 
                 //(5)
-                totalInputValue += output.value;
+                try {
+                    totalInputValue = Math.addExact(totalInputValue, output.value);
+                } catch (ArithmeticException e) {
+                    return false;
+                }
             }
         }
 
@@ -117,7 +190,11 @@ public class TxHandler {
                 return false;
             }
             //(5)
-            totalOutputValue += output.value;
+            try {
+                totalOutputValue = Math.addExact(totalOutputValue, output.value);
+            } catch (ArithmeticException e) {
+                return false;
+            }
         }
         if (totalInputValue<totalOutputValue) {
             //System.out.println("total input smaller than output, invalid!");
@@ -136,29 +213,38 @@ public class TxHandler {
     public Transaction[] handleTxs(Transaction[] possibleTxs) {
         // IMPLEMENT THIS
 
+        //the expensive signature checks of the whole epoch run up front, in parallel if we can;
+        //a tx whose signatures could not be confirmed there is fully re-checked by isValidTx below
+        PublicKey[][] verifiedAddresses = verifier != null ?
+                verifier.verify(possibleTxs, poolForValidityCheck) : new PublicKey[possibleTxs.length][];
+
         ArrayList<Transaction> txs = new ArrayList<Transaction>();
         for (int txIndex=0;txIndex<possibleTxs.length;txIndex++) {
             Transaction tx = possibleTxs[txIndex];
 
             //if the tx is not valid, bypass it
-            boolean validFlag = isValidTx(tx);
+            boolean validFlag = isValidTx(tx, verifiedAddresses[txIndex]);
             //System.out.println("valid flag is "+validFlag);
             if (!validFlag) continue;
 
             //process the tx
+            //the later txs of the epoch are checked against the pool as this tx leaves it, so they
+            //may spend its outputs, but not the outputs it spent
             //step 1: remove now-spent utxo from the pool
             ArrayList<Transaction.Input> inputs = tx.getInputs();
             for (int i=0; i<inputs.size(); i++) {
                 Transaction.Input input = inputs.get(i);
-                UTXO u = new UTXO(input.prevTxHash, input.outputIndex);
+                UTXO u = new UTXO(input.getPrevTxId(), input.outputIndex);
                 poolOriginal.removeUTXO(u);
+                poolForValidityCheck.removeUTXO(u);
             }
             //step 2: add new output from the current tx to the new utxopool
             ArrayList<Transaction.Output> outputs = tx.getOutputs();
             for (int i=0; i<outputs.size(); i++) {
                 //construct a new UTXO, using the hash of the tx, and index of the output in outputs
-                UTXO utxo = new UTXO(tx.getHash(), i);
+                UTXO utxo = new UTXO(tx.getId(), i);
                 poolOriginal.addUTXO(utxo, outputs.get(i));
+                poolForValidityCheck.addUTXO(utxo, outputs.get(i));
             }
 
             //add it to the array
@@ -1,25 +1,36 @@
-import java.util.Arrays;
-
 public class UTXO implements Comparable<UTXO> {
 
     /** Hash of the transaction from which this UTXO originates */
-    private byte[] txHash;
+    private final Hash256 txId;
 
     /** Index of the corresponding output in said transaction */
-    private int index;
+    private final int index;
 
     /**
      * Creates a new UTXO corresponding to the output with index <index> in the transaction whose
      * hash is {@code txHash}
      */
     public UTXO(byte[] txHash, int index) {
-        this.txHash = Arrays.copyOf(txHash, txHash.length);
+        this(Hash256.of(txHash), index);
+    }
+
+    /**
+     * Creates a new UTXO corresponding to the output with index <index> in the transaction whose
+     * hash is {@code txId}
+     */
+    public UTXO(Hash256 txId, int index) {
+        this.txId = txId;
         this.index = index;
     }
 
-    /** @return the transaction hash of this UTXO */
+    /** @return a new array of the transaction hash of this UTXO */
     public byte[] getTxHash() {
-        return txHash;
+        return txId.toByteArray();
+    }
+
+    /** @return the transaction hash of this UTXO */
+    public Hash256 getTxId() {
+        return txId;
     }
 
     /** @return the index of this UTXO */
@@ -29,7 +40,7 @@ public class UTXO implements Comparable<UTXO> {
 
     /**
      * Compares this UTXO to the one specified by {@code other}, considering them equal if they have
-     * {@code txHash} arrays with equal contents and equal {@code index} values
+     * equal transaction hashes and equal {@code index} values
      */
     public boolean equals(Object other) {
         if (other == null) {
@@ -40,15 +51,7 @@ public class UTXO implements Comparable<UTXO> {
         }
 
         UTXO utxo = (UTXO) other;
-        byte[] hash = utxo.txHash;
-        int in = utxo.index;
-        if (hash.length != txHash.length || index != in)
-            return false;
-        for (int i = 0; i < hash.length; i++) {
-            if (hash[i] != txHash[i])
-                return false;
-        }
-        return true;
+        return index == utxo.index && txId.equals(utxo.txId);
     }
 
     /**
@@ -58,34 +61,18 @@ public class UTXO implements Comparable<UTXO> {
     public int hashCode() {
         int hash = 1;
         hash = hash * 17 + index;
-        hash = hash * 31 + Arrays.hashCode(txHash);
+        hash = hash * 31 + txId.hashCode();
         return hash;
     }
 
     /** Compares this UTXO to the one specified by {@code utxo} */
     public int compareTo(UTXO utxo) {
-        byte[] hash = utxo.txHash;
         int in = utxo.index;
         if (in > index)
             return -1;
         else if (in < index)
             return 1;
-        else {
-            int len1 = txHash.length;
-            int len2 = hash.length;
-            if (len2 > len1)
-                return -1;
-            else if (len2 < len1)
-                return 1;
-            else {
-                for (int i = 0; i < len1; i++) {
-                    if (hash[i] > txHash[i])
-                        return -1;
-                    else if (hash[i] < txHash[i])
-                        return 1;
-                }
-                return 0;
-            }
-        }
+        else
+            return txId.compareTo(utxo.txId);
     }
 }
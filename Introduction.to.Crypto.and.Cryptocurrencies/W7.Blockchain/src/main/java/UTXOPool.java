@@ -1,32 +1,59 @@
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Set;
 
+/**
+ * A collection of UTXOs that can be copied in constant time. The UTXOs are kept in a hash array
+ * mapped trie whose nodes are shared between a pool and its copies: a change copies the nodes on
+ * the path to the changed UTXO, at most seven of them and in practice about log32 of the pool
+ * size, and shares all others, so a block node of the chain only stores what its block spends and
+ * creates, plus those paths.
+ * <p>
+ * Nodes a pool created since it was last copied belong to it alone and are changed in place, so a
+ * block's worth of changes between two copies only copies each path once. Copying hands those
+ * nodes over to sharing, which modifies the pool being copied; pools are not thread-safe, so a
+ * pool must not be copied while another thread is using it.
+ */
 public class UTXOPool {
 
-    /**
-     * The current collection of UTXOs, with each one mapped to its corresponding transaction output
-     */
-    private HashMap<UTXO, Transaction.Output> H;
+    /** number of hash bits each level of the trie consumes */
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** the trie of the pool, null if it is empty */
+    private Node root;
+
+    /** number of UTXOs in the pool */
+    private int size;
+
+    /** marks the nodes this pool may change in place; replaced when the pool is copied */
+    private Object owner = new Object();
 
     /** Creates a new empty UTXOPool */
     public UTXOPool() {
-        H = new HashMap<UTXO, Transaction.Output>();
     }
 
-    /** Creates a new UTXOPool that is a copy of {@code uPool} */
+    /** Creates a new UTXOPool that is a copy of {@code uPool}, in constant time */
     public UTXOPool(UTXOPool uPool) {
-        H = new HashMap<UTXO, Transaction.Output>(uPool.H);
+        //the nodes are shared from now on, so neither pool may change them in place any more
+        uPool.owner = new Object();
+        root = uPool.root;
+        size = uPool.size;
     }
 
     /** Adds a mapping from UTXO {@code utxo} to transaction output @code{txOut} to the pool */
     public void addUTXO(UTXO utxo, Transaction.Output txOut) {
-        H.put(utxo, txOut);
+        if (!contains(utxo))
+            size++;
+        int hash = utxo.hashCode();
+        root = root == null ? new BitmapNode(owner, 1 << (hash & MASK), new Object[]{utxo, txOut})
+                : root.put(owner, 0, hash, utxo, txOut);
     }
 
     /** Removes the UTXO {@code utxo} from the pool */
     public void removeUTXO(UTXO utxo) {
-        H.remove(utxo);
+        if (!contains(utxo))
+            return;
+        size--;
+        root = root.remove(owner, 0, utxo.hashCode(), utxo);
     }
 
     /**
@@ -34,21 +61,250 @@ public class UTXOPool {
      *         not in the pool.
      */
     public Transaction.Output getTxOutput(UTXO ut) {
-        return H.get(ut);
+        return root != null ? root.get(0, ut.hashCode(), ut) : null;
     }
 
     /** @return true if UTXO {@code utxo} is in the pool and false otherwise */
     public boolean contains(UTXO utxo) {
-        return H.containsKey(utxo);
+        return getTxOutput(utxo) != null;
+    }
+
+    /** @return the number of UTXOs in the pool */
+    public int size() {
+        return size;
     }
 
     /** Returns an {@code ArrayList} of all UTXOs in the pool */
     public ArrayList<UTXO> getAllUTXO() {
-        Set<UTXO> setUTXO = H.keySet();
-        ArrayList<UTXO> allUTXO = new ArrayList<UTXO>();
-        for (UTXO ut : setUTXO) {
-            allUTXO.add(ut);
+        ArrayList<UTXO> utxos = new ArrayList<UTXO>(size);
+        if (root != null)
+            root.collect(utxos);
+        return utxos;
+    }
+
+    /** a node of the trie, owned by the pool whose owner it was created with until that pool is copied */
+    private abstract static class Node {
+        final Object owner;
+
+        Node(Object owner) {
+            this.owner = owner;
+        }
+
+        /** @return the output {@code key} maps to below this node, at level {@code shift}, or null */
+        abstract Transaction.Output get(int shift, int hash, UTXO key);
+
+        /** @return this node, or a changed copy of it, with {@code key} mapped to {@code value} */
+        abstract Node put(Object owner, int shift, int hash, UTXO key, Transaction.Output value);
+
+        /** @return this node, or a changed copy of it, without {@code key}; null if nothing is left */
+        abstract Node remove(Object owner, int shift, int hash, UTXO key);
+
+        abstract void collect(ArrayList<UTXO> keys);
+    }
+
+    /**
+     * A node with a slot pair for each bit set in {@code bitmap}: a UTXO and its output, or null
+     * and the node below for the UTXOs that share these hash bits
+     */
+    private static final class BitmapNode extends Node {
+        int bitmap;
+        Object[] slots;
+
+        BitmapNode(Object owner, int bitmap, Object[] slots) {
+            super(owner);
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        /** @return the index in {@code slots} of the pair for {@code bit} */
+        private int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Transaction.Output get(int shift, int hash, UTXO key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+                return null;
+            int i = index(bit);
+            Object k = slots[i];
+            if (k == null)
+                return ((Node) slots[i + 1]).get(shift + BITS, hash, key);
+            return key.equals(k) ? (Transaction.Output) slots[i + 1] : null;
+        }
+
+        @Override
+        Node put(Object owner, int shift, int hash, UTXO key, Transaction.Output value) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 2];
+                System.arraycopy(slots, 0, newSlots, 0, i);
+                newSlots[i] = key;
+                newSlots[i + 1] = value;
+                System.arraycopy(slots, i, newSlots, i + 2, slots.length - i);
+                return edit(owner, bitmap | bit, newSlots);
+            }
+            Object k = slots[i];
+            Object v = slots[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).put(owner, shift + BITS, hash, key, value);
+                return child == v ? this : set(owner, i, null, child);
+            }
+            if (key.equals(k))
+                return v == value ? this : set(owner, i, k, value);
+            //two UTXOs share the hash bits so far, so they move one level down
+            UTXO other = (UTXO) k;
+            return set(owner, i, null, pair(owner, shift + BITS, other.hashCode(), other,
+                    (Transaction.Output) v, hash, key, value));
         }
-        return allUTXO;
+
+        @Override
+        Node remove(Object owner, int shift, int hash, UTXO key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+                return this;
+            int i = index(bit);
+            Object k = slots[i];
+            Object v = slots[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).remove(owner, shift + BITS, hash, key);
+                if (child == v)
+                    return this;
+                if (child != null)
+                    return set(owner, i, null, child);
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit)
+                return null;
+            Object[] newSlots = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, newSlots, 0, i);
+            System.arraycopy(slots, i + 2, newSlots, i, slots.length - i - 2);
+            return edit(owner, bitmap ^ bit, newSlots);
+        }
+
+        /** @return this node with the pair at {@code i} set to {@code k} and {@code v}, changed in place if {@code owner} owns it */
+        private Node set(Object owner, int i, Object k, Object v) {
+            if (this.owner == owner) {
+                slots[i] = k;
+                slots[i + 1] = v;
+                return this;
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[i] = k;
+            newSlots[i + 1] = v;
+            return new BitmapNode(owner, bitmap, newSlots);
+        }
+
+        /** @return this node with {@code bitmap} and {@code slots}, changed in place if {@code owner} owns it */
+        private Node edit(Object owner, int bitmap, Object[] slots) {
+            if (this.owner != owner)
+                return new BitmapNode(owner, bitmap, slots);
+            this.bitmap = bitmap;
+            this.slots = slots;
+            return this;
+        }
+
+        @Override
+        void collect(ArrayList<UTXO> keys) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (slots[i] != null)
+                    keys.add((UTXO) slots[i]);
+                else
+                    ((Node) slots[i + 1]).collect(keys);
+            }
+        }
+    }
+
+    /** A node holding UTXOs whose whole hashes are equal, as a list of pairs */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        Object[] slots;
+
+        CollisionNode(Object owner, int hash, Object[] slots) {
+            super(owner);
+            this.hash = hash;
+            this.slots = slots;
+        }
+
+        private int indexOf(UTXO key) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (key.equals(slots[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        Transaction.Output get(int shift, int hash, UTXO key) {
+            int i = indexOf(key);
+            return i >= 0 ? (Transaction.Output) slots[i + 1] : null;
+        }
+
+        @Override
+        Node put(Object owner, int shift, int hash, UTXO key, Transaction.Output value) {
+            if (hash != this.hash) {
+                //this node moves one level down, below a node that tells the two hashes apart
+                BitmapNode parent = new BitmapNode(owner, 1 << ((this.hash >>> shift) & MASK), new Object[]{null, this});
+                return parent.put(owner, shift, hash, key, value);
+            }
+            int i = indexOf(key);
+            Object[] newSlots;
+            if (i >= 0) {
+                if (slots[i + 1] == value)
+                    return this;
+                newSlots = this.owner == owner ? slots : slots.clone();
+                newSlots[i + 1] = value;
+            } else {
+                newSlots = new Object[slots.length + 2];
+                System.arraycopy(slots, 0, newSlots, 0, slots.length);
+                newSlots[slots.length] = key;
+                newSlots[slots.length + 1] = value;
+            }
+            return edit(owner, newSlots);
+        }
+
+        @Override
+        Node remove(Object owner, int shift, int hash, UTXO key) {
+            int i = indexOf(key);
+            if (i < 0)
+                return this;
+            if (slots.length == 2)
+                return null;
+            Object[] newSlots = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, newSlots, 0, i);
+            System.arraycopy(slots, i + 2, newSlots, i, slots.length - i - 2);
+            return edit(owner, newSlots);
+        }
+
+        private Node edit(Object owner, Object[] slots) {
+            if (this.owner != owner)
+                return new CollisionNode(owner, hash, slots);
+            this.slots = slots;
+            return this;
+        }
+
+        @Override
+        void collect(ArrayList<UTXO> keys) {
+            for (int i = 0; i < slots.length; i += 2)
+                keys.add((UTXO) slots[i]);
+        }
+    }
+
+    /** @return a node at level {@code shift} holding two UTXOs with different keys */
+    private static Node pair(Object owner, int shift, int hash1, UTXO key1, Transaction.Output value1,
+                             int hash2, UTXO key2, Transaction.Output value2) {
+        if (hash1 == hash2)
+            return new CollisionNode(owner, hash1, new Object[]{key1, value1, key2, value2});
+        int index1 = (hash1 >>> shift) & MASK;
+        int index2 = (hash2 >>> shift) & MASK;
+        if (index1 == index2)
+            return new BitmapNode(owner, 1 << index1, new Object[]{null,
+                    pair(owner, shift + BITS, hash1, key1, value1, hash2, key2, value2)});
+        int bitmap = 1 << index1 | 1 << index2;
+        if (index1 < index2)
+            return new BitmapNode(owner, bitmap, new Object[]{key1, value1, key2, value2});
+        return new BitmapNode(owner, bitmap, new Object[]{key2, value2, key1, value1});
     }
 }
@@ -0,0 +1,91 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of input signatures that verified successfully. An entry is the SHA-256 hash of
+ * the signed data, the signature and the address it was verified under, so it only ever vouches
+ * for exactly what was verified, whatever hash the transaction claims to have. The same
+ * transaction is checked when it is mined into a block, when that block is added to the chain and
+ * again for every fork it lands on; with this cache only the first check pays for the signature,
+ * the others only redo the UTXO and value checks against their own pool, and hash the data to
+ * sign once more. The least recently used entries are evicted once the cache is full.
+ */
+public class VerifiedSignatureCache {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final VerifiedSignatureCache defaultCache = new VerifiedSignatureCache(DEFAULT_CAPACITY);
+
+    private static final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException x) {
+                throw new IllegalStateException("SHA-256 is not available", x);
+            }
+        }
+    };
+
+    /** the keys of the verified signatures, in access order; the values are unused */
+    private final LinkedHashMap<Hash256, Boolean> verified;
+
+    /** Creates an empty cache holding at most {@code capacity} verified signatures */
+    public VerifiedSignatureCache(final int capacity) {
+        verified = new LinkedHashMap<Hash256, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Hash256, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** @return the cache shared by all {@link TxHandler}s */
+    public static VerifiedSignatureCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * @return the key under which {@code signature} of {@code message} by {@code address} is
+     *         cached: the hash of all three, each but the last preceded by its length
+     */
+    public static Hash256 key(byte[] message, byte[] signature, PublicKey address) {
+        MessageDigest md = digests.get();
+        updateLength(md, message.length);
+        md.update(message);
+        updateLength(md, signature.length);
+        md.update(signature);
+        md.update(address.getEncoded());
+        return Hash256.of(md.digest());
+    }
+
+    private static void updateLength(MessageDigest md, int length) {
+        md.update((byte) (length >>> 24));
+        md.update((byte) (length >>> 16));
+        md.update((byte) (length >>> 8));
+        md.update((byte) length);
+    }
+
+    /** @return true if the signature with {@link #key key} {@code key} has already been verified */
+    public synchronized boolean contains(Hash256 key) {
+        return verified.get(key) != null;
+    }
+
+    /** Records that the signature with {@link #key key} {@code key} is valid */
+    public synchronized void add(Hash256 key) {
+        verified.put(key, Boolean.TRUE);
+    }
+
+    /** @return the number of verified signatures in the cache */
+    public synchronized int size() {
+        return verified.size();
+    }
+
+    /** Removes all verified signatures from the cache */
+    public synchronized void clear() {
+        verified.clear();
+    }
+}
@@ -0,0 +1,157 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for restarting a {@link BlockChain} from a {@link BlockStore}. Only the online
+ * version of the block chain keeps its blocks in a store, so the build leaves these tests out when
+ * the other one is built.
+ * <p>
+ * Test Strategy:
+ * Test 1: a reopened block chain has the max height block and UTXO pool it had, from a checkpoint
+ *         and the blocks stored since, the older segments being deleted
+ * Test 2: a last record whose length was not written is not there after reopening, so the block
+ *         chain is back to the block before it, and can be built on again
+ */
+public class BlockChainRestartTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private static final KeyPair scrooge = newKeyPair();
+    private static final KeyPair alice = newKeyPair();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static KeyPair newKeyPair() {
+        try {
+            return KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Block genesis() {
+        final Block genesis = new Block(null, scrooge.getPublic());
+        genesis.finalize();
+        return genesis;
+    }
+
+    /**
+     * Adds a block on the max height block of {@code chain}, with a transaction splitting output 0
+     * of {@code prevTx} between scrooge and alice.
+     *
+     * @return that transaction
+     */
+    private static Transaction addBlock(BlockChain chain, Transaction prevTx) throws SignatureException {
+        final Main.Tx tx = new Main.Tx();
+        tx.addInput(prevTx.getHash(), 0);
+        final long value = prevTx.getOutput(0).value;
+        tx.addOutput(value / 2, scrooge.getPublic());
+        tx.addOutput(value - value / 2, alice.getPublic());
+        tx.signTx(scrooge.getPrivate(), 0);
+        final BlockHandler handler = new BlockHandler(chain);
+        handler.processTx(tx);
+        final Block block = handler.createBlock(alice.getPublic());
+        assertNotNull(block);
+        assertEquals(1, block.getTransactions().size());
+        return tx;
+    }
+
+    /** adds {@code n} blocks as {@link #addBlock}, and a fork of one block every ten; @return the last transaction */
+    private static Transaction addBlocks(BlockChain chain, Transaction prevTx, int n) throws SignatureException {
+        for (int i = 0; i < n; i++) {
+            if (i % 10 == 5) {
+                final Block fork = new Block(chain.getMaxHeightBlock().getPrevBlockHash(), scrooge.getPublic());
+                fork.finalize();
+                assertTrue(chain.addBlock(fork));
+            }
+            prevTx = addBlock(chain, prevTx);
+        }
+        return prevTx;
+    }
+
+    private static void assertSameUTXOs(UTXOPool expected, UTXOPool actual) {
+        assertEquals(expected.size(), actual.size());
+        for (UTXO utxo : expected.getAllUTXO())
+            assertEquals(expected.getTxOutput(utxo), actual.getTxOutput(utxo));
+    }
+
+    private static Path segmentPath(Path directory, int s) {
+        return directory.resolve(String.format("blocks-%05d.dat", s));
+    }
+
+    // Test 1: a reopened block chain has the max height block and UTXO pool it had, from a checkpoint
+    //         and the blocks stored since, the older segments being deleted
+    @Test
+    public void testReopen() throws IOException, SignatureException {
+        final Path directory = folder.getRoot().toPath();
+        final Block genesis = genesis();
+        BlockStore store = new BlockStore(directory, SEGMENT_SIZE);
+        final BlockChain chain = new BlockChain(genesis, store);
+        final int n = 4 * BlockChain.CUT_OFF_AGE;
+        final Transaction prevTx = addBlocks(chain, genesis.getCoinbase(), n);
+        final Block tip = chain.getMaxHeightBlock();
+        final UTXOPool utxoPool = chain.getMaxHeightUTXOPool();
+        store.close();
+
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        assertFalse(Files.exists(segmentPath(directory, 0)));
+        assertTrue(store.size() < n);
+        final BlockChain reopened = new BlockChain(genesis, store);
+        assertArrayEquals(tip.getHash(), reopened.getMaxHeightBlock().getHash());
+        assertSameUTXOs(utxoPool, reopened.getMaxHeightUTXOPool());
+
+        addBlock(reopened, prevTx);
+        assertArrayEquals(tip.getHash(), reopened.getMaxHeightBlock().getPrevBlockHash());
+        store.close();
+    }
+
+    // Test 2: a last record whose length was not written is not there after reopening, so the block
+    //         chain is back to the block before it, and can be built on again
+    @Test
+    public void testTornLastRecord() throws IOException, SignatureException {
+        final Path directory = folder.getRoot().toPath();
+        final Block genesis = genesis();
+        BlockStore store = new BlockStore(directory, SEGMENT_SIZE);
+        final BlockChain chain = new BlockChain(genesis, store);
+        final Transaction prevTx = addBlocks(chain, genesis.getCoinbase(), 3 * BlockChain.CUT_OFF_AGE);
+        final Block tip = chain.getMaxHeightBlock();
+        final UTXOPool utxoPool = chain.getMaxHeightUTXOPool();
+        addBlock(chain, prevTx);
+        final long torn = store.getOffset(store.size() - 1);
+        store.close();
+
+        //the length is written last, so a crash before it leaves zeros there
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, (int) (torn >>> 32)), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.SIZE / 8), (int) torn);
+        }
+
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        final BlockChain reopened = new BlockChain(genesis, store);
+        assertArrayEquals(tip.getHash(), reopened.getMaxHeightBlock().getHash());
+        assertSameUTXOs(utxoPool, reopened.getMaxHeightUTXOPool());
+
+        addBlock(reopened, prevTx);
+        assertArrayEquals(tip.getHash(), reopened.getMaxHeightBlock().getPrevBlockHash());
+        assertEquals(torn, store.getOffset(store.size() - 1));
+        store.close();
+    }
+}
@@ -0,0 +1,206 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link BlockStore} and {@link ChainCheckpoint}, which do not depend on the
+ * version of {@link BlockChain} built
+ * <p>
+ * Test Strategy:
+ * Test 1: discarded blocks can no longer be found, the others still can, and appending goes on
+ * Test 2: a reopened store finds the blocks it had at the same offsets, the checkpoint written and
+ *         the segments discarded staying as they were
+ * Test 3: a last record whose length was not written is not there after reopening, and the next
+ *         block is appended in its place
+ * Test 4: a decoded checkpoint has the nodes, offsets and UTXOs that were encoded
+ */
+public class BlockStoreTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private static final KeyPair scrooge = newKeyPair();
+    private static final KeyPair alice = newKeyPair();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static KeyPair newKeyPair() {
+        try {
+            return KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Block genesis() {
+        final Block genesis = new Block(null, scrooge.getPublic());
+        genesis.finalize();
+        return genesis;
+    }
+
+    /** appends {@code n} empty blocks, each on the one before, to {@code store}; @return the last one */
+    private static Block appendBlocks(BlockStore store, Block block, int n) {
+        for (int i = 0; i < n; i++) {
+            block = new Block(block.getHash(), alice.getPublic());
+            block.finalize();
+            store.append(block);
+        }
+        return block;
+    }
+
+    private static void assertSameUTXOs(UTXOPool expected, UTXOPool actual) {
+        assertEquals(expected.size(), actual.size());
+        for (UTXO utxo : expected.getAllUTXO())
+            assertEquals(expected.getTxOutput(utxo), actual.getTxOutput(utxo));
+    }
+
+    private static Path segmentPath(Path directory, int s) {
+        return directory.resolve(String.format("blocks-%05d.dat", s));
+    }
+
+    // Test 1: discarded blocks can no longer be found, the others still can, and appending goes on
+    @Test
+    public void testDiscardBefore() {
+        final BlockStore store = new BlockStore(SEGMENT_SIZE);
+        store.append(genesis());
+        Block block = appendBlocks(store, genesis(), 40);
+        final long kept = store.getOffset(30);
+        assertTrue(kept >>> 32 > 0);
+        final long discarded = store.getOffset(0);
+        final Hash256 discardedId = genesis().getId();
+        final Hash256 keptId = store.get(kept).getId();
+        store.discardBefore(kept);
+
+        assertFalse(store.contains(discardedId));
+        assertEquals(-1, store.getOffset(discardedId));
+        try {
+            store.get(discarded);
+            fail("read a discarded block");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        //the blocks in the segment of kept are all still there
+        assertTrue(store.size() > 41 - 30);
+        assertEquals(kept >>> 32, store.getOffset(0) >>> 32);
+        assertEquals(keptId, store.get(store.getOffset(keptId)).getId());
+
+        block = new Block(block.getHash(), alice.getPublic());
+        block.finalize();
+        final long appended = store.append(block);
+        assertEquals(block.getId(), store.get(appended).getId());
+        assertEquals(appended, store.getOffset(store.size() - 1));
+    }
+
+    // Test 2: a reopened store finds the blocks it had at the same offsets, the checkpoint written and
+    //         the segments discarded staying as they were
+    @Test
+    public void testReopen() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        BlockStore store = new BlockStore(directory, SEGMENT_SIZE);
+        assertNull(store.readCheckpoint());
+        store.append(genesis());
+        appendBlocks(store, genesis(), 40);
+        final byte[] checkpoint = {1, 2, 3};
+        store.writeCheckpoint(checkpoint);
+        store.discardBefore(store.getOffset(30));
+        final int size = store.size();
+        final long[] offsets = new long[size];
+        final Hash256[] ids = new Hash256[size];
+        for (int i = 0; i < size; i++) {
+            offsets[i] = store.getOffset(i);
+            ids[i] = store.get(offsets[i]).getId();
+        }
+        store.close();
+
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        assertFalse(Files.exists(segmentPath(directory, 0)));
+        assertFalse(store.contains(genesis().getId()));
+        assertEquals(size, store.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals(offsets[i], store.getOffset(i));
+            assertEquals(offsets[i], store.getOffset(ids[i]));
+            assertEquals(ids[i], store.get(offsets[i]).getId());
+        }
+        assertArrayEquals(checkpoint, store.readCheckpoint());
+        store.close();
+    }
+
+    // Test 3: a last record whose length was not written is not there after reopening, and the next
+    //         block is appended in its place
+    @Test
+    public void testTornLastRecord() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        BlockStore store = new BlockStore(directory, SEGMENT_SIZE);
+        store.append(genesis());
+        final Block last = appendBlocks(store, genesis(), 20);
+        final Block torn = appendBlocks(store, last, 1);
+        final int size = store.size();
+        final long tornOffset = store.getOffset(size - 1);
+        store.close();
+
+        //the length is written last, so a crash before it leaves zeros there
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, (int) (tornOffset >>> 32)), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.SIZE / 8), (int) tornOffset);
+        }
+
+        store = new BlockStore(directory, SEGMENT_SIZE);
+        assertEquals(size - 1, store.size());
+        assertFalse(store.contains(torn.getId()));
+        assertEquals(last.getId(), store.get(store.getOffset(size - 2)).getId());
+
+        final Block block = appendBlocks(store, last, 1);
+        assertEquals(tornOffset, store.getOffset(block.getId()));
+        assertEquals(size, store.size());
+        store.close();
+    }
+
+    // Test 4: a decoded checkpoint has the nodes, offsets and UTXOs that were encoded
+    @Test
+    public void testCheckpointRoundTrip() {
+        final Block genesis = genesis();
+        final Transaction coinbase = genesis.getCoinbase();
+        final Transaction tx = new Transaction();
+        tx.addInput(coinbase.getHash(), 0);
+        tx.addOutput(coinbase.getOutput(0).value / 2, scrooge.getPublic());
+        tx.addOutput(coinbase.getOutput(0).value / 2, alice.getPublic());
+        tx.finalize();
+        final UTXOPool first = new UTXOPool();
+        first.addUTXO(new UTXO(coinbase.getHash(), 0), coinbase.getOutput(0));
+        final UTXOPool second = new UTXOPool();
+        for (int i = 0; i < tx.numOutputs(); i++)
+            second.addUTXO(new UTXO(tx.getHash(), i), tx.getOutput(i));
+        final Hash256[] ids = {genesis.getId(), tx.getId()};
+        final long[] offsets = {0, (3L << 32) | 17};
+        final ChainCheckpoint checkpoint = new ChainCheckpoint(genesis.getId(), 12, 1L << 32, ids, offsets,
+                new UTXOPool[]{first, second});
+
+        final ChainCheckpoint decoded = ChainCheckpoint.decode(checkpoint.encode());
+        assertEquals(genesis.getId(), decoded.getGenesisId());
+        assertEquals(12, decoded.getHeight());
+        assertEquals(1L << 32, decoded.getReplayFrom());
+        assertEquals(2, decoded.size());
+        assertEquals(ids[0], decoded.getId(0));
+        assertEquals(ids[1], decoded.getId(1));
+        assertEquals(offsets[0], decoded.getOffset(0));
+        assertEquals(offsets[1], decoded.getOffset(1));
+        assertSameUTXOs(first, decoded.getUTXOPool(0));
+        assertSameUTXOs(second, decoded.getUTXOPool(1));
+    }
+}
@@ -0,0 +1,236 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TransactionCodec} and {@link TransactionView}
+ * <p>
+ * Test Strategy:
+ * Test 1: a decoded transaction has the hash, data to sign and contents of the one encoded
+ * Test 2: an integer written in more bytes than needed is rejected
+ * Test 3: an address written in more bytes than needed is rejected
+ * Test 4: a truncated encoding is rejected, leaving the buffer position where it was
+ * Test 5: bytes left over inside the encoded length are rejected
+ * Test 6: the coinbase flag survives a round trip, and is only accepted on a coinbase shape
+ * Test 7: a decoded transaction is valid exactly when the transaction it was encoded from is
+ */
+public class TransactionCodecTest {
+
+    private static final KeyPair scrooge = newKeyPair();
+    private static final KeyPair alice = newKeyPair();
+
+    private static KeyPair newKeyPair() {
+        try {
+            return KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** @return a transaction spending two outputs of {@code prevTx}, signed by scrooge, paying alice twice */
+    private static Transaction spend(Transaction prevTx) throws SignatureException {
+        final Main.Tx tx = new Main.Tx();
+        tx.addInput(prevTx.getHash(), 0);
+        tx.addInput(prevTx.getHash(), 1);
+        tx.addOutput(7 * Transaction.COIN, alice.getPublic());
+        tx.addOutput(3 * Transaction.COIN, alice.getPublic());
+        tx.signTx(scrooge.getPrivate(), 0);
+        tx.signTx(scrooge.getPrivate(), 1);
+        return tx;
+    }
+
+    private static Transaction funding() {
+        final Transaction tx = new Transaction();
+        tx.addOutput(6 * Transaction.COIN, scrooge.getPublic());
+        tx.addOutput(4 * Transaction.COIN, scrooge.getPublic());
+        tx.finalize();
+        return tx;
+    }
+
+    /** @return {@code encoded} with {@code inserted} put at {@code pos} and its length fixed up */
+    private static byte[] insert(byte[] encoded, int pos, byte... inserted) {
+        final ByteBuffer b = ByteBuffer.allocate(encoded.length + inserted.length);
+        b.putInt(ByteBuffer.wrap(encoded).getInt() + inserted.length);
+        b.put(encoded, 4, pos - 4).put(inserted).put(encoded, pos, encoded.length - pos);
+        return b.array();
+    }
+
+    private static void assertMalformed(byte[] encoded) {
+        final ByteBuffer src = ByteBuffer.wrap(encoded);
+        try {
+            TransactionCodec.decode(src);
+            fail("decoded a malformed transaction");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, src.position());
+        }
+    }
+
+    // Test 1: a decoded transaction has the hash, data to sign and contents of the one encoded
+    @Test
+    public void testRoundTrip() throws SignatureException {
+        final Transaction tx = spend(funding());
+        final byte[] encoded = TransactionCodec.encode(tx);
+        assertEquals(TransactionCodec.encodedSize(tx), encoded.length);
+
+        final ByteBuffer src = ByteBuffer.wrap(encoded);
+        final TransactionView view = TransactionCodec.decode(src);
+        assertEquals(encoded.length, src.position());
+        assertFalse(view.isCoinbase());
+        assertEquals(2, view.numInputs());
+        assertEquals(2, view.numOutputs());
+        assertEquals(tx.getId(), view.getId());
+        for (int i = 0; i < tx.numInputs(); i++) {
+            assertArrayEquals(tx.getRawDataToSign(i), view.getRawDataToSign(i));
+            assertArrayEquals(tx.getInput(i).signature, view.getSignature(i));
+            assertEquals(tx.getInput(i).outputIndex, view.getOutputIndex(i));
+        }
+        for (int i = 0; i < tx.numOutputs(); i++) {
+            assertEquals(tx.getOutput(i).value, view.getValue(i));
+            assertEquals(tx.getOutput(i).address, view.getAddress(i));
+        }
+
+        final Transaction decoded = view.toTransaction();
+        assertArrayEquals(tx.getRawTx(), decoded.getRawTx());
+        assertArrayEquals(tx.getHash(), decoded.getHash());
+
+        final ByteBuffer copy = ByteBuffer.allocate(view.encodedSize());
+        view.writeTo(copy);
+        assertArrayEquals(encoded, copy.array());
+    }
+
+    // Test 2: an integer written in more bytes than needed is rejected
+    @Test
+    public void testNonShortestVarint() throws SignatureException {
+        final byte[] encoded = TransactionCodec.encode(spend(funding()));
+        //the input count follows the length and the flags; 2 inputs are written as the one byte 4
+        assertEquals(4, encoded[5]);
+        final byte[] padded = insert(encoded, 5, (byte) 0x84);
+        padded[6] = 0;
+        assertMalformed(padded);
+    }
+
+    // Test 3: an address written in more bytes than needed is rejected
+    @Test
+    public void testNonShortestAddress() {
+        final Transaction coinbase = new Transaction(Block.COINBASE, scrooge.getPublic());
+        final byte[] encoded = TransactionCodec.encode(coinbase);
+        //length, flags, no inputs, one output, then its value and the lengths of the address
+        final ByteBuffer b = ByteBuffer.wrap(encoded);
+        int pos = 4 + 1 + 1 + 1;
+        pos += Transaction.varLongSize(TransactionCodec.getVarLong(b, pos));
+        final long exponentLength = TransactionCodec.getVarLong(b, pos);
+        final int exponentLengthPos = pos;
+        pos += Transaction.varLongSize(exponentLength);
+        pos += Transaction.varLongSize(TransactionCodec.getVarLong(b, pos));
+
+        //the same exponent with a leading zero byte, which BigInteger reads as the same number
+        final byte[] padded = insert(encoded, pos, (byte) 0);
+        assertEquals(Transaction.varLongSize(exponentLength), Transaction.varLongSize(exponentLength + 1));
+        final ByteBuffer p = ByteBuffer.wrap(padded);
+        p.position(exponentLengthPos);
+        Transaction.putVarLong(p, exponentLength + 1);
+        assertMalformed(padded);
+    }
+
+    // Test 4: a truncated encoding is rejected, leaving the buffer position where it was
+    @Test
+    public void testTruncated() throws SignatureException {
+        final byte[] encoded = TransactionCodec.encode(spend(funding()));
+        for (int length : new int[] { 0, 3, 4, 5, encoded.length / 2, encoded.length - 1 }) {
+            final ByteBuffer src = ByteBuffer.wrap(encoded, 0, length);
+            try {
+                TransactionCodec.decode(src);
+                fail("decoded " + length + " of " + encoded.length + " bytes");
+            } catch (IllegalArgumentException e) {
+                assertEquals(0, src.position());
+            }
+        }
+
+        //a whole transaction followed by part of another one
+        final ByteBuffer two = ByteBuffer.allocate(2 * encoded.length - 1);
+        two.put(encoded).put(encoded, 0, encoded.length - 1).flip();
+        try {
+            TransactionCodec.decodeAll(two);
+            fail("decoded a truncated batch");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, two.position());
+        }
+    }
+
+    // Test 5: bytes left over inside the encoded length are rejected
+    @Test
+    public void testLeftoverBytes() throws SignatureException {
+        final byte[] encoded = TransactionCodec.encode(spend(funding()));
+        assertMalformed(insert(encoded, encoded.length, (byte) 0));
+    }
+
+    // Test 6: the coinbase flag survives a round trip, and is only accepted on a coinbase shape
+    @Test
+    public void testCoinbaseFlag() throws SignatureException {
+        final Transaction coinbase = new Transaction(Block.COINBASE, scrooge.getPublic());
+        final TransactionView view = TransactionCodec.decode(ByteBuffer.wrap(TransactionCodec.encode(coinbase)));
+        assertTrue(view.isCoinbase());
+        assertEquals(coinbase.getId(), view.getId());
+        final Transaction decoded = view.toTransaction();
+        assertTrue(decoded.isCoinbase());
+        assertArrayEquals(coinbase.getHash(), decoded.getHash());
+
+        //the flags byte follows the length
+        final byte[] spend = TransactionCodec.encode(spend(funding()));
+        assertEquals(0, spend[4]);
+        spend[4] = 1;
+        assertMalformed(spend);
+        spend[4] = 2;
+        assertMalformed(spend);
+    }
+
+    // Test 7: a decoded transaction is valid exactly when the transaction it was encoded from is
+    @Test
+    public void testIsValidView() throws SignatureException {
+        final Transaction prevTx = funding();
+        final UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(prevTx.getHash(), 0), prevTx.getOutput(0));
+        utxoPool.addUTXO(new UTXO(prevTx.getHash(), 1), prevTx.getOutput(1));
+        final TxHandler handler = new TxHandler(utxoPool);
+
+        final Transaction valid = spend(prevTx);
+        assertTrue(handler.isValidTx(valid));
+        assertTrue(handler.isValidTx(TransactionCodec.decode(ByteBuffer.wrap(TransactionCodec.encode(valid)))));
+
+        //signed by the wrong key
+        final Main.Tx forged = new Main.Tx();
+        forged.addInput(prevTx.getHash(), 0);
+        forged.addOutput(6 * Transaction.COIN, alice.getPublic());
+        forged.signTx(alice.getPrivate(), 0);
+        assertFalse(handler.isValidTx(forged));
+        assertFalse(handler.isValidTx(TransactionCodec.decode(ByteBuffer.wrap(TransactionCodec.encode(forged)))));
+
+        //paying out more than it claims
+        final Main.Tx greedy = new Main.Tx();
+        greedy.addInput(prevTx.getHash(), 0);
+        greedy.addOutput(7 * Transaction.COIN, alice.getPublic());
+        greedy.signTx(scrooge.getPrivate(), 0);
+        assertFalse(handler.isValidTx(greedy));
+        assertFalse(handler.isValidTx(TransactionCodec.decode(ByteBuffer.wrap(TransactionCodec.encode(greedy)))));
+
+        //claiming the same output twice
+        final Main.Tx twice = new Main.Tx();
+        twice.addInput(prevTx.getHash(), 0);
+        twice.addInput(prevTx.getHash(), 0);
+        twice.addOutput(Transaction.COIN, alice.getPublic());
+        twice.signTx(scrooge.getPrivate(), 0);
+        twice.signTx(scrooge.getPrivate(), 1);
+        assertFalse(handler.isValidTx(twice));
+        assertFalse(handler.isValidTx(TransactionCodec.decode(ByteBuffer.wrap(TransactionCodec.encode(twice)))));
+    }
+}
@@ -0,0 +1,98 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TransactionPool}
+ * <p>
+ * Test Strategy:
+ * Test 1: a claim with a forged signature is turned away, and does not keep the real spend of the
+ *         output it claims out of the pool
+ * Test 2: a transaction spending a pooled one is checked against the outputs of its parent
+ */
+public class TransactionPoolTest {
+
+    private static final KeyPair scrooge = newKeyPair();
+    private static final KeyPair alice = newKeyPair();
+
+    private static KeyPair newKeyPair() {
+        try {
+            return KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** @return a transaction spending output 0 of {@code prevTx}, paying {@code value} to alice, signed by {@code signer} */
+    private static Transaction spend(Transaction prevTx, long value, KeyPair signer) throws SignatureException {
+        final Main.Tx tx = new Main.Tx();
+        tx.addInput(prevTx.getHash(), 0);
+        tx.addOutput(value, alice.getPublic());
+        tx.signTx(signer.getPrivate(), 0);
+        return tx;
+    }
+
+    private static Transaction funding() {
+        final Transaction tx = new Transaction();
+        tx.addOutput(10 * Transaction.COIN, scrooge.getPublic());
+        tx.finalize();
+        return tx;
+    }
+
+    private static UTXOPool poolOf(Transaction tx) {
+        final UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(tx.getHash(), 0), tx.getOutput(0));
+        return utxoPool;
+    }
+
+    // Test 1: a claim with a forged signature is turned away, and does not keep the real spend of the
+    //         output it claims out of the pool
+    @Test
+    public void testForgedClaimThenRealSpend() throws SignatureException {
+        final Transaction prevTx = funding();
+        final UTXOPool utxoPool = poolOf(prevTx);
+        final TransactionPool txPool = new TransactionPool();
+
+        final Transaction forged = spend(prevTx, 9 * Transaction.COIN, alice);
+        assertFalse(txPool.addTransaction(forged, utxoPool));
+        assertEquals(0, txPool.size());
+        assertNull(txPool.getSpender(new UTXO(prevTx.getHash(), 0)));
+
+        final Transaction real = spend(prevTx, 9 * Transaction.COIN, scrooge);
+        assertTrue(txPool.addTransaction(real, utxoPool));
+        assertSame(real, txPool.getSpender(new UTXO(prevTx.getHash(), 0)));
+        assertEquals(Transaction.COIN, txPool.getFeeRate(real.getHash()) * real.getRawTxSize(), 1e-3);
+
+        //a double spend of a valid pooled claim is still turned away
+        assertFalse(txPool.addTransaction(spend(prevTx, 8 * Transaction.COIN, scrooge), utxoPool));
+        assertEquals(1, txPool.size());
+    }
+
+    // Test 2: a transaction spending a pooled one is checked against the outputs of its parent
+    @Test
+    public void testPooledParent() throws SignatureException {
+        final Transaction prevTx = funding();
+        final UTXOPool utxoPool = poolOf(prevTx);
+        final TransactionPool txPool = new TransactionPool();
+        final Transaction parent = spend(prevTx, 9 * Transaction.COIN, scrooge);
+        assertTrue(txPool.addTransaction(parent, utxoPool));
+
+        //the output of parent is alice's, so only she can spend it, and for no more than it holds
+        assertFalse(txPool.addTransaction(spend(parent, 8 * Transaction.COIN, scrooge), utxoPool));
+        assertFalse(txPool.addTransaction(spend(parent, 10 * Transaction.COIN, alice), utxoPool));
+        final Transaction child = spend(parent, 8 * Transaction.COIN, alice);
+        assertTrue(txPool.addTransaction(child, utxoPool));
+        assertEquals(1, txPool.getParents(child.getHash()).size());
+        assertSame(parent, txPool.getParents(child.getHash()).get(0));
+        assertSame(child, txPool.getChildren(parent.getHash()).get(0));
+    }
+}
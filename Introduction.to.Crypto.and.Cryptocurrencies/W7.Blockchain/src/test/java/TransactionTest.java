@@ -0,0 +1,98 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the raw data of {@link Transaction}
+ * <p>
+ * Test Strategy:
+ * Test 1: the buffer overloads of getRawTx and getRawDataToSign write exactly the bytes of the
+ *         array ones, at the position of the buffer, whatever its byte order
+ */
+public class TransactionTest {
+
+    /** bytes kept around the data written into a buffer, to check nothing else was touched */
+    private static final int PAD = 5;
+    private static final byte FILL = 0x55;
+
+    /** @return a little-endian buffer of {@code size} bytes between two pads, positioned after the first */
+    private static ByteBuffer paddedBuffer(int size) {
+        final byte[] padded = new byte[PAD + size + PAD];
+        Arrays.fill(padded, FILL);
+        final ByteBuffer dst = ByteBuffer.wrap(padded).order(ByteOrder.LITTLE_ENDIAN);
+        dst.position(PAD);
+        return dst;
+    }
+
+    /** checks that {@code expected} was written into {@code dst} after its first pad, and nothing else */
+    private static void assertWritten(byte[] expected, ByteBuffer dst) {
+        assertEquals(PAD + expected.length, dst.position());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, dst.order());
+        final byte[] padded = dst.array();
+        assertArrayEquals(expected, Arrays.copyOfRange(padded, PAD, PAD + expected.length));
+        for (int i = 0; i < PAD; i++) {
+            assertEquals(FILL, padded[i]);
+            assertEquals(FILL, padded[PAD + expected.length + i]);
+        }
+    }
+
+    private static void putOutput(ByteBuffer dst, long value, PublicKey address) {
+        Transaction.putVarLong(dst, value);
+        dst.put(((RSAPublicKey) address).getPublicExponent().toByteArray());
+        dst.put(((RSAPublicKey) address).getModulus().toByteArray());
+    }
+
+    // Test 1: the buffer overloads of getRawTx and getRawDataToSign write exactly the bytes of the
+    //         array ones, at the position of the buffer, whatever its byte order
+    @Test
+    public void testRawDataIntoBuffer() throws NoSuchAlgorithmException {
+        final PublicKey address = KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic();
+        final byte[] prevTxHash = new byte[32];
+        prevTxHash[0] = 1;
+        final byte[] shortHash = { 9, 8, 7 };
+        final byte[] signature = { 1, 2, 3 };
+        final Transaction tx = new Transaction();
+        tx.addInput(prevTxHash, 3);
+        tx.addInput(shortHash, 1);
+        tx.addSignature(signature, 0);
+        tx.addOutput(10, address);
+        tx.addOutput(25 * Transaction.COIN, address);
+
+        //the layout the hash and the signatures are computed over, built up independently
+        final ByteBuffer outputs = ByteBuffer.allocate(4096);
+        putOutput(outputs, 10, address);
+        putOutput(outputs, 25 * Transaction.COIN, address);
+        outputs.flip();
+        final ByteBuffer expectedTx = ByteBuffer.allocate(4096);
+        expectedTx.put(prevTxHash).putInt(3).put(signature).put(shortHash).putInt(1).put(outputs.duplicate());
+        final byte[] rawTx = Arrays.copyOf(expectedTx.array(), expectedTx.position());
+        final ByteBuffer expectedData = ByteBuffer.allocate(4096);
+        expectedData.put(shortHash).putInt(1).put(outputs.duplicate());
+        final byte[] rawData = Arrays.copyOf(expectedData.array(), expectedData.position());
+
+        assertEquals(rawTx.length, tx.getRawTxSize());
+        assertArrayEquals(rawTx, tx.getRawTx());
+        ByteBuffer dst = paddedBuffer(tx.getRawTxSize());
+        tx.getRawTx(dst);
+        assertWritten(rawTx, dst);
+
+        assertEquals(rawData.length, tx.getRawDataToSignSize(1));
+        assertArrayEquals(rawData, tx.getRawDataToSign(1));
+        dst = paddedBuffer(tx.getRawDataToSignSize(1));
+        tx.getRawDataToSign(1, dst);
+        assertWritten(rawData, dst);
+
+        dst = paddedBuffer(tx.getRawDataToSignSize(0));
+        tx.getRawDataToSign(0, dst);
+        assertWritten(tx.getRawDataToSign(0), dst);
+    }
+}